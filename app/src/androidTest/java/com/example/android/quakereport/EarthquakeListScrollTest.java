@@ -0,0 +1,149 @@
+package com.example.android.quakereport;
+
+import android.app.Instrumentation;
+import android.content.Intent;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.rule.ActivityTestRule;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+import android.widget.ListView;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Flings the earthquake list up and down with the {@link RenderProfiler} turned on, and checks
+ * that few enough frames missed a vsync. The list is loaded from a local
+ * {@link FakeUsgsServer}, so the test doesn't depend on the USGS or the network.
+ */
+@RunWith(AndroidJUnit4.class)
+public class EarthquakeListScrollTest {
+
+    private static final String LOG_TAG = EarthquakeListScrollTest.class.getName();
+
+    /** Largest share of the frames drawn while scrolling that may be janky, in percent. */
+    private static final double JANK_BUDGET_PERCENT = 10;
+
+    /** Longest to wait for the list to load, in milliseconds. */
+    private static final long LOAD_TIMEOUT_MILLIS = 30000;
+
+    /** Longest to wait for a fling to come to rest, in milliseconds. */
+    private static final long SCROLL_TIMEOUT_MILLIS = 10000;
+
+    /** Number of times the list is flung to the bottom and back. */
+    private static final int FLINGS = 3;
+
+    /** Duration of each fling, in milliseconds. */
+    private static final int FLING_MILLIS = 1000;
+
+    @Rule
+    public ActivityTestRule<EarthquakeActivity> activityRule =
+            new ActivityTestRule<>(EarthquakeActivity.class, false, false);
+
+    private FakeUsgsServer server;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new FakeUsgsServer();
+        server.setFeatureCount(200);
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    @Test
+    public void flingingTheListStaysWithinTheJankBudget() throws InterruptedException {
+        Intent intent = new Intent(InstrumentationRegistry.getTargetContext(),
+                EarthquakeActivity.class)
+                .putExtra(EarthquakeActivity.EXTRA_REQUEST_URL, server.getQueryUrl())
+                .putExtra(EarthquakeActivity.EXTRA_PROFILE_RENDERING, true);
+        final EarthquakeActivity activity = activityRule.launchActivity(intent);
+        final ListView list = (ListView) activity.findViewById(R.id.list);
+        final RenderProfiler profiler = activity.getRenderProfiler();
+        Instrumentation instrumentation = InstrumentationRegistry.getInstrumentation();
+
+        waitForItems(list);
+
+        // Only count the frames drawn while flinging, not those of the first layout
+        instrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                profiler.reset();
+            }
+        });
+
+        for (int i = 0; i < FLINGS * 2; i++) {
+            final int distance = (i % 2 == 0 ? 1 : -1) * list.getHeight() * list.getCount();
+            instrumentation.runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    list.smoothScrollBy(distance, FLING_MILLIS);
+                }
+            });
+            waitForIdle(list);
+        }
+
+        final long[] counts = new long[2];
+        instrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                profiler.stop();
+                counts[0] = profiler.getFrameHistogram().getCount();
+                counts[1] = profiler.getJankFrameCount();
+                Log.i(LOG_TAG, profiler.getSummary());
+            }
+        });
+
+        long frames = counts[0];
+        long jankFrames = counts[1];
+        assertTrue("No frames were recorded while scrolling", frames > 0);
+        double jankPercent = 100.0 * jankFrames / frames;
+        assertTrue(jankFrames + " of " + frames + " frames missed a vsync ("
+                + jankPercent + "%)", jankPercent <= JANK_BUDGET_PERCENT);
+    }
+
+    /**
+     * Waits until the loader has filled the list with more earthquakes than fit on the screen.
+     */
+    private static void waitForItems(final ListView list) throws InterruptedException {
+        long deadline = SystemClock.uptimeMillis() + LOAD_TIMEOUT_MILLIS;
+        while (list.getCount() == 0 || list.getLastVisiblePosition() >= list.getCount() - 1) {
+            assertTrue("The list didn't fill up with earthquakes",
+                    SystemClock.uptimeMillis() < deadline);
+            Thread.sleep(100);
+        }
+    }
+
+    /**
+     * Waits until a fling that was just started has come to rest.
+     */
+    private static void waitForIdle(ListView list) throws InterruptedException {
+        long deadline = SystemClock.uptimeMillis() + SCROLL_TIMEOUT_MILLIS;
+        // The scroll lasts for FLING_MILLIS, and then the list stops moving
+        Thread.sleep(FLING_MILLIS);
+        int lastPosition = -1;
+        int lastTop = Integer.MIN_VALUE;
+        while (true) {
+            int position = list.getFirstVisiblePosition();
+            int top = list.getChildCount() > 0 ? list.getChildAt(0).getTop() : 0;
+            if (position == lastPosition && top == lastTop) {
+                return;
+            }
+            assertTrue("The list didn't stop scrolling", SystemClock.uptimeMillis() < deadline);
+            lastPosition = position;
+            lastTop = top;
+            Thread.sleep(100);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.android.quakereport;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Measures how fast an {@link AlertRuleEngine} evaluates a batch of earthquakes against
+ * thousands of rules, compared with testing every rule against every earthquake.
+ */
+public class AlertRuleBenchmark {
+
+    private static final String LOG_TAG = AlertRuleBenchmark.class.getName();
+
+    /** Fraction of the generated rules which are worldwide rather than regional. */
+    private static final double WORLDWIDE_FRACTION = 0.1;
+
+    /**
+     * Evaluates {@code eventCount} synthetic earthquakes against each of several rule counts.
+     * @return a summary of the results, one line per rule count.
+     */
+    public String run(int eventCount) {
+        Random random = new Random(42);
+        List<Earthquake> earthquakes = createEarthquakes(eventCount, random);
+        StringBuilder results = new StringBuilder();
+
+        for (int ruleCount : new int[] {100, 1000, 5000, 10000}) {
+            List<AlertRule> rules = createRules(ruleCount, random);
+
+            long buildStart = SystemClock.elapsedRealtime();
+            AlertRuleEngine engine = new AlertRuleEngine(rules);
+            long buildMillis = SystemClock.elapsedRealtime() - buildStart;
+
+            // Warm up, then time the indexed evaluation
+            engine.evaluate(earthquakes);
+            long indexedStart = SystemClock.elapsedRealtime();
+            int indexedMatches = engine.evaluate(earthquakes).size();
+            long indexedMillis = Math.max(1, SystemClock.elapsedRealtime() - indexedStart);
+
+            // Time the nested loop the engine replaces
+            long naiveStart = SystemClock.elapsedRealtime();
+            int naiveMatches = 0;
+            for (Earthquake earthquake : earthquakes) {
+                for (AlertRule rule : rules) {
+                    if (rule.matches(earthquake)) {
+                        naiveMatches++;
+                    }
+                }
+            }
+            long naiveMillis = Math.max(1, SystemClock.elapsedRealtime() - naiveStart);
+
+            String result = String.format(Locale.US,
+                    "%d rules x %d events, %d matches (nested loop %d), index built in %dms, "
+                            + "indexed %dms (%.0f events/s), nested loop %dms, speedup %.1fx",
+                    ruleCount, eventCount,
+                    indexedMatches, naiveMatches, buildMillis, indexedMillis,
+                    eventCount * 1000.0 / indexedMillis, naiveMillis,
+                    (double) naiveMillis / indexedMillis);
+            Log.i(LOG_TAG, result);
+            results.append(result).append('\n');
+        }
+        return results.toString();
+    }
+
+    private static List<Earthquake> createEarthquakes(int count, Random random) {
+        List<Earthquake> earthquakes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            earthquakes.add(new Earthquake("bm" + i, 1476000120000L - i * 60000L,
+                    "Benchmark quake " + i,
+                    Math.round(random.nextDouble() * 90) / 10.0,
+                    1476000000000L - i * 60000L,
+                    "http://earthquake.usgs.gov/earthquakes/eventpage/bm" + i,
+                    random.nextDouble() * 180 - 90,
+                    random.nextDouble() * 360 - 180));
+        }
+        return earthquakes;
+    }
+
+    /**
+     * Creates a mix of worldwide rules for M5 and up, and regional rules for any magnitude with
+     * radii from 50 to 1000 km.
+     */
+    private static List<AlertRule> createRules(int count, Random random) {
+        List<AlertRule> rules = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            if (random.nextDouble() < WORLDWIDE_FRACTION) {
+                rules.add(new AlertRule(5 + Math.round(random.nextDouble() * 30) / 10.0));
+            } else {
+                rules.add(new AlertRule(Math.round(random.nextDouble() * 80) / 10.0,
+                        random.nextDouble() * 180 - 90,
+                        random.nextDouble() * 360 - 180,
+                        50 + random.nextDouble() * 950));
+            }
+        }
+        return rules;
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.android.quakereport;
+
+import android.net.Uri;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Times multi-source ingestion against three local {@link FakeUsgsServer}s:
+ * <ul>
+ *     <li>a primary feed,</li>
+ *     <li>a second agency reporting the same quakes a few seconds later and some tens of
+ *     kilometres away, which should all be merged into the primary's,</li>
+ *     <li>a third agency reporting different quakes, which should all be kept.</li>
+ * </ul>
+ */
+public class DeduplicationBenchmark {
+
+    private static final String LOG_TAG = DeduplicationBenchmark.class.getName();
+
+    /** Number of times the merge is repeated when timing it. */
+    private static final int MERGE_ITERATIONS = 20;
+
+    /**
+     * Runs the benchmark with {@code count} quakes in each feed.
+     * @return a summary of the results.
+     * @throws IOException if a server couldn't be started.
+     */
+    public String run(int count) throws IOException {
+        FakeUsgsServer primary = new FakeUsgsServer();
+        FakeUsgsServer duplicate = new FakeUsgsServer();
+        FakeUsgsServer distinct = new FakeUsgsServer();
+
+        // Same seed, so the same quakes, but shifted in time and space
+        duplicate.setIdPrefix("dup");
+        duplicate.setTimeOffsetMillis(4000);
+        duplicate.setCoordinateOffset(0.2);
+
+        // Different quakes, half way between the primary's (which are a minute apart)
+        distinct.setIdPrefix("other");
+        distinct.setSeed(7);
+        distinct.setTimeOffsetMillis(30000);
+
+        List<FakeUsgsServer> servers = new ArrayList<>();
+        servers.add(primary);
+        servers.add(duplicate);
+        servers.add(distinct);
+
+        try {
+            List<EarthquakeSource> sources = new ArrayList<>();
+            for (FakeUsgsServer server : servers) {
+                server.setFeatureCount(count);
+                server.start();
+                sources.add(new FdsnEarthquakeSource(Uri.parse(server.getQueryUrl()).buildUpon()
+                        .appendQueryParameter("format", "geojson")
+                        .build().toString()));
+            }
+
+            // End to end: fetch from every server at once, then merge
+            EarthquakeDeduplicator deduplicator = new EarthquakeDeduplicator();
+            long start = SystemClock.elapsedRealtime();
+            List<Earthquake> merged = new MultiSourceFetcher(sources, deduplicator)
+                    .fetchEarthquakes();
+            long fetchMillis = SystemClock.elapsedRealtime() - start;
+
+            // Time the merge on its own, using the same responses each time
+            List<List<Earthquake>> responses = new ArrayList<>();
+            for (EarthquakeSource source : sources) {
+                responses.add(source.fetchEarthquakes());
+            }
+            deduplicator.merge(responses);
+            long mergeStart = SystemClock.elapsedRealtime();
+            for (int i = 0; i < MERGE_ITERATIONS; i++) {
+                deduplicator.merge(responses);
+            }
+            double mergeMillis = (SystemClock.elapsedRealtime() - mergeStart)
+                    / (double) MERGE_ITERATIONS;
+
+            int expected = 2 * count;
+            String result = String.format(Locale.US,
+                    "3 feeds x %d events -> %d merged (expected %d), "
+                            + "fetch+merge %dms, merge alone %.1fms",
+                    count, merged.size(), expected,
+                    fetchMillis, mergeMillis);
+            Log.i(LOG_TAG, result);
+            return result;
+        } finally {
+            for (FakeUsgsServer server : servers) {
+                server.stop();
+            }
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.example.android.quakereport;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Debug;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Measures how much the {@link EarthquakeRegistry} cuts allocation and garbage collection when
+ * parsing refreshes of the same feed. Each scenario parses a synthetic GeoJSON response and
+ * reports the bytes allocated and garbage collections run during the parse, across all
+ * threads, and how many of the resulting earthquakes were reused instances. The feeds have no
+ * place names that need escaping, like most real ones, apart from in one extra scenario.
+ */
+public class EarthquakeReuseBenchmark {
+
+    private static final String LOG_TAG = EarthquakeReuseBenchmark.class.getName();
+
+    /** Fraction of the events revised in the partly revised refresh. */
+    private static final double REVISED_FRACTION = 0.1;
+
+    /** Number of times each scenario is run. The results are averaged. */
+    private static final int RUNS = 5;
+
+    /**
+     * Runs each scenario on a feed of {@code count} earthquakes.
+     * @return a summary of the results, one line per scenario.
+     */
+    public String run(int count) {
+        FakeUsgsServer server = new FakeUsgsServer();
+        server.setEscapedPlaceNames(false);
+        String feed = server.createFeed(count);
+        server.setRevisedFraction(REVISED_FRACTION);
+        String revisedFeed = server.createFeed(count);
+        server.setRevisedFraction(0);
+        server.setEscapedPlaceNames(true);
+        String escapedFeed = server.createFeed(count);
+
+        StringBuilder results = new StringBuilder();
+        results.append(measure("no registry", feed, null, null, false)).append('\n');
+        results.append(measure("first load", feed, null, new EarthquakeRegistry(), false))
+                .append('\n');
+        results.append(measure("unchanged refresh", feed, feed, new EarthquakeRegistry(), true))
+                .append('\n');
+        results.append(measure(String.format(Locale.US, "%.0f%% revised refresh",
+                REVISED_FRACTION * 100), revisedFeed, feed,
+                new EarthquakeRegistry(), true)).append('\n');
+        results.append(measure("unchanged refresh, escaped place names", escapedFeed,
+                escapedFeed, new EarthquakeRegistry(), true)).append('\n');
+        return results.toString();
+    }
+
+    /**
+     * Measures parsing a response.
+     * @param name of the scenario.
+     * @param json is the response to parse.
+     * @param previousJson is the response the registry is filled from before each run, or null
+     *                     to empty it instead.
+     * @param registry to parse with, or null to always build new earthquakes.
+     * @param countReused is true if the earthquakes reused from the previous response should be
+     *                    counted.
+     * @return a summary of the results.
+     */
+    private static String measure(String name, String json, String previousJson,
+                                  EarthquakeRegistry registry, boolean countReused) {
+        // Warm up, so that class loading and the parser's threads aren't counted
+        QueryUtils.extractFeatureFromJson(json, registry);
+
+        long totalBytes = 0;
+        long totalGcs = 0;
+        long totalMillis = 0;
+        int earthquakeCount = 0;
+        int reused = 0;
+        for (int run = 0; run < RUNS; run++) {
+            List<Earthquake> previous = null;
+            if (registry != null) {
+                registry.clear();
+                if (previousJson != null) {
+                    previous = QueryUtils.extractFeatureFromJson(previousJson, registry);
+                }
+            }
+            Runtime.getRuntime().gc();
+
+            AllocationCounter counter = new AllocationCounter();
+            long start = SystemClock.elapsedRealtime();
+            List<Earthquake> earthquakes = QueryUtils.extractFeatureFromJson(json, registry);
+            totalMillis += SystemClock.elapsedRealtime() - start;
+            counter.stop();
+            totalBytes += counter.getBytesAllocated();
+            totalGcs += counter.getGcCount();
+
+            earthquakeCount = earthquakes.size();
+            if (countReused && previous != null) {
+                reused = 0;
+                for (int i = 0; i < earthquakes.size() && i < previous.size(); i++) {
+                    if (earthquakes.get(i) == previous.get(i)) {
+                        reused++;
+                    }
+                }
+            }
+        }
+
+        String result = String.format(Locale.US,
+                "%s: %d earthquakes, %d reused, %.2f MB allocated, %.1f GCs, %dms per parse",
+                name, earthquakeCount, reused, totalBytes / (RUNS * 1024.0 * 1024.0),
+                (double) totalGcs / RUNS, totalMillis / RUNS);
+        Log.i(LOG_TAG, result);
+        return result;
+    }
+
+    /**
+     * Counts the bytes allocated and garbage collections run by the whole process, from when
+     * it's created until {@link #stop()} is called. From Marshmallow this uses the runtime's
+     * own statistics, and before that the deprecated allocation counting in {@link Debug}.
+     */
+    static class AllocationCounter {
+        private final boolean useRuntimeStats =
+                Build.VERSION.SDK_INT >= Build.VERSION_CODES.M;
+        private long startBytes;
+        private long startGcs;
+        private long bytes;
+        private long gcs;
+
+        @SuppressWarnings("deprecation")
+        AllocationCounter() {
+            if (useRuntimeStats) {
+                startBytes = readRuntimeStat("art.gc.bytes-allocated");
+                startGcs = readRuntimeStat("art.gc.gc-count");
+            } else {
+                Debug.resetAllCounts();
+                Debug.startAllocCounting();
+            }
+        }
+
+        @SuppressWarnings("deprecation")
+        void stop() {
+            if (useRuntimeStats) {
+                bytes = readRuntimeStat("art.gc.bytes-allocated") - startBytes;
+                gcs = readRuntimeStat("art.gc.gc-count") - startGcs;
+            } else {
+                Debug.stopAllocCounting();
+                bytes = Debug.getGlobalAllocSize();
+                gcs = Debug.getGlobalGcInvocationCount();
+            }
+        }
+
+        long getBytesAllocated() {
+            return bytes;
+        }
+
+        long getGcCount() {
+            return gcs;
+        }
+
+        @TargetApi(Build.VERSION_CODES.M)
+        private static long readRuntimeStat(String statName) {
+            String value = Debug.getRuntimeStat(statName);
+            if (value == null) {
+                return 0;
+            }
+            try {
+                return Long.parseLong(value);
+            } catch (NumberFormatException e) {
+                return 0;
+            }
+        }
+    }
+}
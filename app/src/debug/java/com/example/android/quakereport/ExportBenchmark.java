@@ -0,0 +1,129 @@
+package com.example.android.quakereport;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Measures {@link EarthquakeExporter} against a large synthetic catalog. For each format it
+ * reports the export speed next to the speed of writing the same number of bytes straight to
+ * disk, and how far the heap grew above the catalog itself while exporting.
+ */
+public class ExportBenchmark {
+
+    private static final String LOG_TAG = ExportBenchmark.class.getName();
+
+    private final File directory;
+
+    /**
+     * Constructs a new {@link ExportBenchmark}.
+     *
+     * @param directory is where the benchmark's scratch files are written.
+     */
+    public ExportBenchmark(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Exports {@code count} synthetic earthquakes to every format and reports the results.
+     * @return a summary of the results, one line per format.
+     * @throws IOException if a file couldn't be written.
+     */
+    public String run(int count) throws IOException {
+        List<Earthquake> earthquakes = createEarthquakes(count);
+        StringBuilder results = new StringBuilder();
+
+        for (EarthquakeExporter.Format format : EarthquakeExporter.Format.values()) {
+            File file = new File(directory, "export-benchmark." + format.getExtension());
+            EarthquakeExporter exporter = new EarthquakeExporter(format);
+
+            // Warm up once, so the timed run isn't measuring class loading and JIT compilation
+            exporter.export(earthquakes, file, null);
+
+            Runtime runtime = Runtime.getRuntime();
+            runtime.gc();
+            long baselineHeap = runtime.totalMemory() - runtime.freeMemory();
+            LoadHarness.HeapSampler heapSampler = new LoadHarness.HeapSampler();
+            heapSampler.start();
+
+            long start = SystemClock.elapsedRealtime();
+            exporter.export(earthquakes, file, null);
+            long exportMillis = Math.max(1, SystemClock.elapsedRealtime() - start);
+
+            heapSampler.stop();
+            long bytes = file.length();
+            long diskMillis = Math.max(1, timeRawWrite(bytes));
+
+            String result = String.format(Locale.US,
+                    "%s: %d events, %.1fMB in %dms (%.1fMB/s), raw disk write %dms (%.1fMB/s), "
+                            + "export/disk=%.2f, heap growth=%.1fKB",
+                    format, count, bytes / 1048576.0, exportMillis,
+                    bytes / 1048576.0 / (exportMillis / 1000.0), diskMillis,
+                    bytes / 1048576.0 / (diskMillis / 1000.0),
+                    (double) exportMillis / diskMillis,
+                    Math.max(0, heapSampler.getPeakBytes() - baselineHeap) / 1024.0);
+            Log.i(LOG_TAG, result);
+            results.append(result).append('\n');
+
+            file.delete();
+        }
+        return results.toString();
+    }
+
+    /**
+     * Writes {@code bytes} bytes to a scratch file through a {@link FileChannel} as fast as
+     * possible, which is the best an export of that size could hope to do.
+     * @return how long it took, in milliseconds.
+     */
+    private long timeRawWrite(long bytes) throws IOException {
+        File file = new File(directory, "export-benchmark.raw");
+        ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+        FileOutputStream outputStream = new FileOutputStream(file);
+        FileChannel channel = outputStream.getChannel();
+
+        long start = SystemClock.elapsedRealtime();
+        try {
+            long remaining = bytes;
+            while (remaining > 0) {
+                buffer.clear();
+                buffer.limit((int) Math.min(buffer.capacity(), remaining));
+                remaining -= channel.write(buffer);
+            }
+        } finally {
+            channel.close();
+            outputStream.close();
+        }
+        long elapsed = SystemClock.elapsedRealtime() - start;
+
+        file.delete();
+        return elapsed;
+    }
+
+    /**
+     * Creates a list of earthquakes with realistic looking values.
+     */
+    private static List<Earthquake> createEarthquakes(int count) {
+        Random random = new Random(42);
+        List<Earthquake> earthquakes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String id = String.format(Locale.US, "bm%08d", i);
+            earthquakes.add(new Earthquake(id, 1476000120000L - i * 60000L,
+                    (random.nextInt(150) + 1) + "km NNE of Benchtown " + i + ", Testland",
+                    Math.round(random.nextDouble() * 90) / 10.0,
+                    1476000000000L - i * 60000L,
+                    "http://earthquake.usgs.gov/earthquakes/eventpage/" + id,
+                    random.nextDouble() * 180 - 90,
+                    random.nextDouble() * 360 - 180));
+        }
+        return earthquakes;
+    }
+}
@@ -0,0 +1,544 @@
+package com.example.android.quakereport;
+
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A local stand-in for the USGS FDSN event web service. It answers
+ * {@value #QUERY_PATH} requests with a synthetic GeoJSON feed of a configurable size, and can
+ * add latency, throttle bandwidth, use chunked transfer encoding and inject errors, so that
+ * {@link QueryUtils} and {@link EarthquakeLoader} can be exercised without the live server.
+ *
+ * The response body is generated while it is written to the socket, so very large feeds never
+ * have to be held in memory by the server.
+ */
+public class FakeUsgsServer {
+
+    private static final String LOG_TAG = FakeUsgsServer.class.getName();
+
+    /** The path of the FDSN event query endpoint. */
+    public static final String QUERY_PATH = "/fdsnws/event/1/query";
+
+    /** Size of each write when bandwidth is throttled, in bytes. */
+    private static final int THROTTLE_SLICE_BYTES = 1024;
+
+    /** Number of features returned when the request has no "limit" parameter. */
+    private volatile int featureCount = 100;
+
+    /** Time to wait before sending the response headers, in milliseconds. */
+    private volatile long latencyMillis;
+
+    /** Maximum number of body bytes sent per second, or 0 for no limit. */
+    private volatile long bytesPerSecond;
+
+    /** Whether the body is sent with "Transfer-Encoding: chunked". */
+    private volatile boolean chunked;
+
+    /** Fraction of requests (0 to 1) that are answered with {@link #errorStatusCode}. */
+    private volatile double errorRate;
+
+    /** The HTTP status code sent for injected errors. */
+    private volatile int errorStatusCode = 503;
+
+    /** Fraction of requests (0 to 1) whose body is cut off halfway through. */
+    private volatile double truncateRate;
+
+    /** Seed for the synthetic events, so the same request always returns the same feed. */
+    private volatile long seed = 42;
+
+    /** Latitude and longitude added to every synthetic event, to imitate another agency. */
+    private volatile double coordinateOffset;
+
+    /** Time added to every synthetic event in milliseconds, to imitate another agency. */
+    private volatile long timeOffsetMillis;
+
+    /** Prefix of the synthetic event ids. */
+    private volatile String idPrefix = "fk";
+
+    /**
+     * Fraction of events (0 to 1) which have been revised, with a later updated time and a
+     * slightly larger magnitude, to imitate a feed refreshing its estimates.
+     */
+    private volatile double revisedFraction;
+
+    /**
+     * Whether every few events has a place name with quotes and a backslash, which must be
+     * escaped. Real feeds rarely have any, and they let scans that look for backslashes stop
+     * early, so they can be turned off to measure the common case.
+     */
+    private volatile boolean escapedPlaceNames = true;
+
+    /** Source of randomness for error injection. */
+    private final Random faultRandom = new Random();
+
+    /** Number of requests served so far. */
+    private final AtomicLong requestCount = new AtomicLong();
+
+    private ServerSocket serverSocket;
+    private ExecutorService executor;
+
+    /**
+     * Starts listening on an ephemeral port of the loopback interface.
+     * @throws IOException if the server socket can't be opened.
+     */
+    public synchronized void start() throws IOException {
+        if (serverSocket != null) {
+            return;
+        }
+
+        serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        executor = Executors.newCachedThreadPool();
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                acceptConnections();
+            }
+        });
+        Log.v(LOG_TAG, "Listening on " + getQueryUrl());
+    }
+
+    /**
+     * Stops the server and closes every connection that is still open.
+     */
+    public synchronized void stop() {
+        if (serverSocket == null) {
+            return;
+        }
+
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Problem closing the server socket", e);
+        }
+        executor.shutdownNow();
+        serverSocket = null;
+        executor = null;
+    }
+
+    /**
+     * Gets the URL of the query endpoint, which can be used in place of the USGS one.
+     * @return the query URL as a String.
+     */
+    public synchronized String getQueryUrl() {
+        if (serverSocket == null) {
+            throw new IllegalStateException("The server has not been started");
+        }
+        return "http://127.0.0.1:" + serverSocket.getLocalPort() + QUERY_PATH;
+    }
+
+    /**
+     * Gets the number of requests that have been served.
+     * @return the number of requests.
+     */
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    public void setFeatureCount(int featureCount) {
+        this.featureCount = featureCount;
+    }
+
+    public void setLatencyMillis(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+    }
+
+    public void setBytesPerSecond(long bytesPerSecond) {
+        this.bytesPerSecond = bytesPerSecond;
+    }
+
+    public void setChunked(boolean chunked) {
+        this.chunked = chunked;
+    }
+
+    public void setErrorRate(double errorRate) {
+        this.errorRate = errorRate;
+    }
+
+    public void setErrorStatusCode(int errorStatusCode) {
+        this.errorStatusCode = errorStatusCode;
+    }
+
+    public void setTruncateRate(double truncateRate) {
+        this.truncateRate = truncateRate;
+    }
+
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    public void setCoordinateOffset(double coordinateOffset) {
+        this.coordinateOffset = coordinateOffset;
+    }
+
+    public void setTimeOffsetMillis(long timeOffsetMillis) {
+        this.timeOffsetMillis = timeOffsetMillis;
+    }
+
+    public void setIdPrefix(String idPrefix) {
+        this.idPrefix = idPrefix;
+    }
+
+    public void setRevisedFraction(double revisedFraction) {
+        this.revisedFraction = revisedFraction;
+    }
+
+    public void setEscapedPlaceNames(boolean escapedPlaceNames) {
+        this.escapedPlaceNames = escapedPlaceNames;
+    }
+
+    /**
+     * Accepts connections until the server socket is closed, handing each one to the executor.
+     */
+    private void acceptConnections() {
+        ServerSocket socket;
+        ExecutorService connectionExecutor;
+        synchronized (this) {
+            socket = serverSocket;
+            connectionExecutor = executor;
+        }
+
+        while (!socket.isClosed()) {
+            try {
+                final Socket connection = socket.accept();
+                connectionExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        handleConnection(connection);
+                    }
+                });
+            } catch (SocketException e) {
+                // The server socket was closed by stop()
+                return;
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Problem accepting a connection", e);
+            }
+        }
+    }
+
+    /**
+     * Reads a single HTTP request from the connection and writes the response.
+     */
+    private void handleConnection(Socket connection) {
+        try {
+            BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(connection.getInputStream(), "US-ASCII"));
+
+            // Read the request line, e.g. "GET /fdsnws/event/1/query?limit=10 HTTP/1.1", and skip
+            // the headers which follow it
+            String requestLine = reader.readLine();
+            String header = reader.readLine();
+            while (header != null && !header.isEmpty()) {
+                header = reader.readLine();
+            }
+            if (requestLine == null) {
+                return;
+            }
+            requestCount.incrementAndGet();
+
+            String[] parts = requestLine.split(" ");
+            String target = parts.length > 1 ? parts[1] : "";
+            String path = target;
+            String query = "";
+            int queryStart = target.indexOf('?');
+            if (queryStart >= 0) {
+                path = target.substring(0, queryStart);
+                query = target.substring(queryStart + 1);
+            }
+
+            OutputStream out = connection.getOutputStream();
+            if (!QUERY_PATH.equals(path)) {
+                writeStatus(out, 404, "Not Found");
+                return;
+            }
+
+            if (latencyMillis > 0) {
+                Thread.sleep(latencyMillis);
+            }
+
+            if (faultRandom.nextDouble() < errorRate) {
+                writeStatus(out, errorStatusCode, "Injected Error");
+                return;
+            }
+
+            int count = featureCount;
+            String limit = getQueryParameter(query, "limit");
+            if (limit != null) {
+                int parsedLimit;
+                try {
+                    parsedLimit = Integer.parseInt(limit);
+                } catch (NumberFormatException e) {
+                    parsedLimit = -1;
+                }
+                if (parsedLimit < 0) {
+                    writeStatus(out, 400, "Bad Request");
+                    return;
+                }
+                count = Math.min(count, parsedLimit);
+            }
+            boolean truncate = faultRandom.nextDouble() < truncateRate;
+
+            writeFeed(out, count, truncate);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException | RuntimeException e) {
+            Log.e(LOG_TAG, "Problem serving a request", e);
+        } finally {
+            try {
+                connection.close();
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Problem closing a connection", e);
+            }
+        }
+    }
+
+    /**
+     * Writes a response with the given status code and an empty body.
+     */
+    private static void writeStatus(OutputStream out, int code, String reason)
+            throws IOException {
+        String response = "HTTP/1.1 " + code + " " + reason + "\r\n"
+                + "Content-Length: 0\r\n"
+                + "Connection: close\r\n\r\n";
+        out.write(response.getBytes("US-ASCII"));
+        out.flush();
+    }
+
+    /**
+     * Writes a successful response holding a GeoJSON FeatureCollection of {@code count}
+     * synthetic earthquakes. When {@code chunked} is false, the body is delimited by closing the
+     * connection, so its length doesn't need to be known up front.
+     */
+    private void writeFeed(OutputStream out, int count, boolean truncate) throws IOException {
+        boolean useChunked = chunked;
+        String headers = "HTTP/1.1 200 OK\r\n"
+                + "Content-Type: application/json;charset=UTF-8\r\n"
+                + (useChunked ? "Transfer-Encoding: chunked\r\n" : "")
+                + "Connection: close\r\n\r\n";
+        out.write(headers.getBytes("US-ASCII"));
+
+        OutputStream body = out;
+        if (bytesPerSecond > 0) {
+            body = new ThrottledOutputStream(body, bytesPerSecond);
+        }
+        if (useChunked) {
+            body = new ChunkedOutputStream(body);
+        }
+        Writer writer = new OutputStreamWriter(body, "UTF-8");
+        boolean complete = writeFeatureCollection(writer, count, truncate ? count / 2 : -1);
+        writer.flush();
+        if (!complete) {
+            // Leave the document unterminated, as if the connection dropped
+            return;
+        }
+
+        if (useChunked) {
+            ((ChunkedOutputStream) body).finish();
+        }
+        out.flush();
+    }
+
+    /**
+     * Builds the same GeoJSON FeatureCollection the server sends for {@code count} earthquakes,
+     * for benchmarks which parse it without going through HTTP.
+     */
+    String createFeed(int count) {
+        StringWriter writer = new StringWriter(count * 512);
+        try {
+            writeFeatureCollection(writer, count, -1);
+        } catch (IOException e) {
+            // A StringWriter never throws
+            throw new IllegalStateException(e);
+        }
+        return writer.toString();
+    }
+
+    /**
+     * Writes a GeoJSON FeatureCollection of {@code count} synthetic earthquakes.
+     * @param cutOff is the index of the feature to stop before, or -1 to write them all.
+     * @return true if the whole document was written, or false if it was cut off.
+     */
+    private boolean writeFeatureCollection(Writer writer, int count, int cutOff)
+            throws IOException {
+        Random random = new Random(seed);
+        StringBuilder feature = new StringBuilder(512);
+
+        writer.write("{\"type\":\"FeatureCollection\",\"metadata\":{\"generated\":");
+        writer.write(Long.toString(System.currentTimeMillis()));
+        writer.write(",\"url\":\"" + QUERY_PATH + "\",\"title\":\"Synthetic Earthquakes\","
+                + "\"status\":200,\"api\":\"1.5.2\",\"count\":" + count + "},\"features\":[");
+        for (int i = 0; i < count; i++) {
+            if (i == cutOff) {
+                return false;
+            }
+            if (i > 0) {
+                writer.write(',');
+            }
+            feature.setLength(0);
+            appendFeature(feature, i, random);
+            writer.write(feature.toString());
+        }
+        writer.write("]}");
+        return true;
+    }
+
+    /**
+     * Appends one synthetic GeoJSON feature, laid out like the ones the USGS service returns.
+     * Every few events uses an awkward place name, to exercise escaping and location splitting,
+     * unless {@link #escapedPlaceNames} is off.
+     */
+    private void appendFeature(StringBuilder out, int index, Random random) {
+        String id = String.format(Locale.US, "%s%08d", idPrefix, index);
+        double magnitude = Math.round(random.nextDouble() * 90) / 10.0;
+        long time = 1476000000000L - index * 60000L + timeOffsetMillis;
+        long updated = time + 120000;
+
+        // Spread the revised events evenly through the feed
+        if ((int) ((index + 1) * revisedFraction) != (int) (index * revisedFraction)) {
+            magnitude = (Math.round(magnitude * 10) + 1) / 10.0;
+            updated += 600000;
+        }
+        double latitude = Math.max(-90, Math.min(90,
+                random.nextDouble() * 180 - 90 + coordinateOffset));
+        double longitude = Math.max(-180, Math.min(180,
+                random.nextDouble() * 360 - 180 + coordinateOffset));
+        double depth = random.nextDouble() * 600;
+
+        String place;
+        int kind = index % 7;
+        if (kind == 5 && !escapedPlaceNames) {
+            kind = 0;
+        }
+        switch (kind) {
+            case 3:
+                place = "Mid-Atlantic Ridge";
+                break;
+            case 5:
+                place = "5km \"S\" of \u014Csaka\\Kita, Japan";
+                break;
+            default:
+                place = (random.nextInt(150) + 1) + "km NNE of Synthville " + index + ", Testland";
+                break;
+        }
+
+        out.append("{\"type\":\"Feature\",\"properties\":{\"mag\":").append(magnitude)
+                .append(",\"place\":");
+        EarthquakeExporter.appendJsonString(out, place);
+        out.append(",\"time\":").append(time)
+                .append(",\"updated\":").append(updated)
+                .append(",\"tz\":null,\"url\":\"http://127.0.0.1/earthquakes/eventpage/")
+                .append(id)
+                .append("\",\"type\":\"earthquake\",\"title\":");
+        EarthquakeExporter.appendJsonString(out, "M " + magnitude + " - " + place);
+        out.append("},\"geometry\":{\"type\":\"Point\",\"coordinates\":[")
+                .append(longitude).append(',').append(latitude).append(',').append(depth)
+                .append("]},\"id\":\"").append(id).append("\"}");
+    }
+
+    /**
+     * Returns the value of the parameter called {@code name} in a URL query string, or null if
+     * it isn't present.
+     */
+    private static String getQueryParameter(String query, String name) {
+        for (String pair : query.split("&")) {
+            int separator = pair.indexOf('=');
+            if (separator > 0 && pair.substring(0, separator).equals(name)) {
+                return pair.substring(separator + 1);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * An {@link OutputStream} which writes in small slices and sleeps between them, so that no
+     * more than a given number of bytes is sent each second.
+     */
+    private static class ThrottledOutputStream extends FilterOutputStream {
+        private final long bytesPerSecond;
+        private final long startNanos = System.nanoTime();
+        private long bytesWritten;
+
+        ThrottledOutputStream(OutputStream out, long bytesPerSecond) {
+            super(out);
+            this.bytesPerSecond = bytesPerSecond;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                int slice = Math.min(len, THROTTLE_SLICE_BYTES);
+                out.write(b, off, slice);
+                out.flush();
+                off += slice;
+                len -= slice;
+                bytesWritten += slice;
+
+                // Sleep until the time at which this many bytes are allowed to have been sent
+                long dueNanos = startNanos + bytesWritten * 1000000000L / bytesPerSecond;
+                long waitNanos = dueNanos - System.nanoTime();
+                if (waitNanos > 0) {
+                    try {
+                        Thread.sleep(waitNanos / 1000000L, (int) (waitNanos % 1000000L));
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException("Interrupted while throttling", e);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * An {@link OutputStream} which frames every write as an HTTP/1.1 chunk.
+     */
+    private static class ChunkedOutputStream extends FilterOutputStream {
+
+        ChunkedOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return;
+            }
+            out.write((Integer.toHexString(len) + "\r\n").getBytes("US-ASCII"));
+            out.write(b, off, len);
+            out.write("\r\n".getBytes("US-ASCII"));
+        }
+
+        /**
+         * Writes the zero-length chunk which ends the body.
+         */
+        void finish() throws IOException {
+            out.write("0\r\n\r\n".getBytes("US-ASCII"));
+            out.flush();
+        }
+    }
+}
@@ -0,0 +1,290 @@
+package com.example.android.quakereport;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.View;
+import android.widget.FrameLayout;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Drives the whole fetch, parse and adapter population path against a given FDSN query URL
+ * (usually a {@link FakeUsgsServer}), and reports throughput, latency percentiles and peak heap.
+ * Loads either build every earthquake afresh, or reuse unchanged ones from an
+ * {@link EarthquakeRegistry} of the harness's own, as {@link EarthquakeLoader} does with the
+ * app's. The app's registry is never touched, so runs don't affect each other.
+ *
+ * The harness blocks while it runs, so it must not be used from the main thread.
+ */
+public class LoadHarness {
+
+    private static final String LOG_TAG = LoadHarness.class.getName();
+
+    /** Number of list rows bound after each load, roughly one screenful. */
+    private static final int VISIBLE_ROWS = 10;
+
+    /** How often the heap usage is sampled, in milliseconds. */
+    private static final long HEAP_SAMPLE_INTERVAL_MILLIS = 5;
+
+    private final Context context;
+    private final String requestUrl;
+    private final boolean reuseEarthquakes;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Constructs a new {@link LoadHarness} which builds every earthquake afresh on each load.
+     *
+     * @param context of the app, used to create the adapter and its views
+     * @param requestUrl is the full query URL, including its parameters, to load from
+     */
+    public LoadHarness(Context context, String requestUrl) {
+        this(context, requestUrl, false);
+    }
+
+    /**
+     * Constructs a new {@link LoadHarness}.
+     *
+     * @param context of the app, used to create the adapter and its views
+     * @param requestUrl is the full query URL, including its parameters, to load from
+     * @param reuseEarthquakes is true to reuse unchanged earthquakes between loads from a
+     *                         registry created for each run, or false to build them all afresh
+     */
+    public LoadHarness(Context context, String requestUrl, boolean reuseEarthquakes) {
+        this.context = context;
+        this.requestUrl = requestUrl;
+        this.reuseEarthquakes = reuseEarthquakes;
+    }
+
+    /**
+     * Loads the URL a fixed number of times, one after another.
+     * @param iterations is the number of loads to perform.
+     * @return a {@link Report} of the run.
+     */
+    public Report run(int iterations) {
+        return run(iterations, Long.MAX_VALUE);
+    }
+
+    /**
+     * Loads the URL over and over until the given time has passed, for soak testing.
+     * @param durationMillis is how long to keep loading for.
+     * @return a {@link Report} of the run.
+     */
+    public Report runFor(long durationMillis) {
+        return run(Integer.MAX_VALUE, durationMillis);
+    }
+
+    private Report run(int iterations, long durationMillis) {
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            throw new IllegalStateException("LoadHarness must not run on the main thread");
+        }
+
+        final EarthquakeArrayAdapter adapter =
+                new EarthquakeArrayAdapter(context, new ArrayList<Earthquake>());
+        final FrameLayout parent = new FrameLayout(context);
+        final View[] rowViews = new View[VISIBLE_ROWS];
+        EarthquakeRegistry registry = reuseEarthquakes ? new EarthquakeRegistry() : null;
+
+        HeapSampler heapSampler = new HeapSampler();
+        Runtime.getRuntime().gc();
+        heapSampler.start();
+
+        List<Long> latencies = new ArrayList<>();
+        int emptyResponses = 0;
+        long totalEvents = 0;
+        long startMillis = SystemClock.elapsedRealtime();
+
+        for (int i = 0; i < iterations
+                && SystemClock.elapsedRealtime() - startMillis < durationMillis; i++) {
+            long iterationStart = SystemClock.elapsedRealtime();
+
+            if (registry != null) {
+                registry.beginLoad();
+            }
+            final List<Earthquake> earthquakes =
+                    QueryUtils.fetchEarthquakeData(requestUrl, registry);
+            if (registry != null) {
+                registry.endLoad();
+            }
+
+            // Populate the adapter on the main thread, as EarthquakeActivity does, and bind the
+            // rows that would be visible on screen
+            final CountDownLatch populated = new CountDownLatch(1);
+            mainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    adapter.clear();
+                    adapter.addAll(earthquakes);
+                    int rows = Math.min(VISIBLE_ROWS, adapter.getCount());
+                    for (int row = 0; row < rows; row++) {
+                        rowViews[row] = adapter.getView(row, rowViews[row], parent);
+                    }
+                    populated.countDown();
+                }
+            });
+            try {
+                populated.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+
+            latencies.add(SystemClock.elapsedRealtime() - iterationStart);
+            if (earthquakes.isEmpty()) {
+                emptyResponses++;
+            }
+            totalEvents += earthquakes.size();
+        }
+
+        long elapsedMillis = SystemClock.elapsedRealtime() - startMillis;
+        heapSampler.stop();
+
+        Report report = new Report(reuseEarthquakes, latencies, emptyResponses, totalEvents,
+                elapsedMillis, heapSampler.getPeakBytes());
+        Log.i(LOG_TAG, report.toString());
+        return report;
+    }
+
+    /**
+     * The results of a {@link LoadHarness} run.
+     */
+    public static class Report {
+        private final boolean reusedEarthquakes;
+        private final long[] sortedLatencies;
+        private final int emptyResponses;
+        private final long totalEvents;
+        private final long elapsedMillis;
+        private final long peakHeapBytes;
+
+        Report(boolean reusedEarthquakes, List<Long> latencies, int emptyResponses,
+               long totalEvents, long elapsedMillis, long peakHeapBytes) {
+            this.reusedEarthquakes = reusedEarthquakes;
+            sortedLatencies = new long[latencies.size()];
+            for (int i = 0; i < sortedLatencies.length; i++) {
+                sortedLatencies[i] = latencies.get(i);
+            }
+            Arrays.sort(sortedLatencies);
+            this.emptyResponses = emptyResponses;
+            this.totalEvents = totalEvents;
+            this.elapsedMillis = elapsedMillis;
+            this.peakHeapBytes = peakHeapBytes;
+        }
+
+        /**
+         * Checks whether the loads reused unchanged earthquakes from a registry, rather than
+         * building them all afresh.
+         */
+        public boolean reusedEarthquakes() {
+            return reusedEarthquakes;
+        }
+
+        /**
+         * Gets the number of loads performed.
+         */
+        public int getRequestCount() {
+            return sortedLatencies.length;
+        }
+
+        /**
+         * Gets the number of loads which produced no earthquakes, because of an error or an
+         * empty feed.
+         */
+        public int getEmptyResponses() {
+            return emptyResponses;
+        }
+
+        /**
+         * Gets the number of earthquakes parsed, per second of the run.
+         */
+        public double getEventsPerSecond() {
+            return elapsedMillis == 0 ? 0 : totalEvents * 1000.0 / elapsedMillis;
+        }
+
+        /**
+         * Gets the number of loads completed, per second of the run.
+         */
+        public double getRequestsPerSecond() {
+            return elapsedMillis == 0 ? 0 : sortedLatencies.length * 1000.0 / elapsedMillis;
+        }
+
+        /**
+         * Gets a load latency percentile using the nearest-rank method.
+         * @param percentile is a value between 0 and 100.
+         * @return the latency in milliseconds, or 0 if nothing was loaded.
+         */
+        public long getLatencyPercentile(double percentile) {
+            if (sortedLatencies.length == 0) {
+                return 0;
+            }
+            int rank = (int) Math.ceil(percentile / 100.0 * sortedLatencies.length);
+            return sortedLatencies[Math.max(0, Math.min(sortedLatencies.length - 1, rank - 1))];
+        }
+
+        /**
+         * Gets the highest heap usage seen during the run, in bytes.
+         */
+        public long getPeakHeapBytes() {
+            return peakHeapBytes;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                    "registry=%s requests=%d empty=%d events=%d elapsed=%dms events/s=%.1f "
+                            + "requests/s=%.2f p50=%dms p90=%dms p99=%dms max=%dms "
+                            + "peakHeap=%.1fMB",
+                    reusedEarthquakes ? "own" : "none", getRequestCount(), emptyResponses,
+                    totalEvents, elapsedMillis,
+                    getEventsPerSecond(), getRequestsPerSecond(),
+                    getLatencyPercentile(50), getLatencyPercentile(90),
+                    getLatencyPercentile(99), getLatencyPercentile(100),
+                    peakHeapBytes / (1024.0 * 1024.0));
+        }
+    }
+
+    /**
+     * Samples the used heap on a background thread and remembers the highest value seen.
+     */
+    static class HeapSampler implements Runnable {
+        private volatile boolean running;
+        private volatile long peakBytes;
+        private Thread thread;
+
+        void start() {
+            running = true;
+            thread = new Thread(this, "HeapSampler");
+            thread.start();
+        }
+
+        void stop() {
+            running = false;
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        long getPeakBytes() {
+            return peakBytes;
+        }
+
+        @Override
+        public void run() {
+            Runtime runtime = Runtime.getRuntime();
+            while (running) {
+                long used = runtime.totalMemory() - runtime.freeMemory();
+                if (used > peakBytes) {
+                    peakBytes = used;
+                }
+                SystemClock.sleep(HEAP_SAMPLE_INTERVAL_MILLIS);
+            }
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package com.example.android.quakereport;
+
+import android.app.Activity;
+import android.content.Intent;
+import android.net.Uri;
+import android.os.AsyncTask;
+import android.os.Bundle;
+import android.util.Log;
+import android.widget.ScrollView;
+import android.widget.TextView;
+
+import java.io.IOException;
+
+/**
+ * Debug-only screen which starts a {@link FakeUsgsServer} and either runs a {@link LoadHarness}
+ * against it, or opens {@link EarthquakeActivity} pointed at it. It can also run one of the
+ * other benchmarks instead, chosen with {@link #EXTRA_BENCHMARK}. It has no launcher icon and is
+ * started from the command line, for example:
+ *
+ * <pre>
+ * adb shell am start -n com.example.android.quakereport/.LoadHarnessActivity \
+ *     --ei features 20000 --ei iterations 20 --el bytes_per_second 500000 --ez chunked true
+ * </pre>
+ *
+ * Supported extras are listed in the EXTRA_ constants below. Results are shown on screen and
+ * logged under the {@link LoadHarness} tag.
+ */
+public class LoadHarnessActivity extends Activity {
+
+    private static final String LOG_TAG = LoadHarnessActivity.class.getName();
+
+    /** Number of features in each feed (int). */
+    public static final String EXTRA_FEATURES = "features";
+    /** Server latency before each response, in milliseconds (long). */
+    public static final String EXTRA_LATENCY_MILLIS = "latency_ms";
+    /** Bandwidth limit in bytes per second, 0 for none (long). */
+    public static final String EXTRA_BYTES_PER_SECOND = "bytes_per_second";
+    /** Whether to use chunked transfer encoding (boolean). */
+    public static final String EXTRA_CHUNKED = "chunked";
+    /** Fraction of requests answered with an HTTP error (float). */
+    public static final String EXTRA_ERROR_RATE = "error_rate";
+    /** Fraction of responses cut off halfway through (float). */
+    public static final String EXTRA_TRUNCATE_RATE = "truncate_rate";
+    /** Whether some place names need escaping, true by default (boolean). */
+    public static final String EXTRA_ESCAPED_NAMES = "escaped_names";
+    /** Whether loads reuse unchanged earthquakes from a registry of the harness's own
+     * (boolean). */
+    public static final String EXTRA_REUSE = "reuse";
+    /** Number of loads to perform (int). */
+    public static final String EXTRA_ITERATIONS = "iterations";
+    /** If set, keep loading for this long instead of a fixed number of times (long). */
+    public static final String EXTRA_DURATION_MILLIS = "duration_ms";
+    /** If true, open the app against the server instead of running the harness (boolean). */
+    public static final String EXTRA_LAUNCH_APP = "launch_app";
+    /** Name of a benchmark to run instead of the harness: "export", "dedup", "alerts",
+     * "parse" or "reuse" (String). */
+    public static final String EXTRA_BENCHMARK = "benchmark";
+
+    private final FakeUsgsServer server = new FakeUsgsServer();
+
+    private TextView outputView;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+
+        outputView = new TextView(this);
+        ScrollView scrollView = new ScrollView(this);
+        scrollView.addView(outputView);
+        setContentView(scrollView);
+
+        Intent intent = getIntent();
+        server.setFeatureCount(intent.getIntExtra(EXTRA_FEATURES, 1000));
+        server.setLatencyMillis(intent.getLongExtra(EXTRA_LATENCY_MILLIS, 0));
+        server.setBytesPerSecond(intent.getLongExtra(EXTRA_BYTES_PER_SECOND, 0));
+        server.setChunked(intent.getBooleanExtra(EXTRA_CHUNKED, false));
+        server.setErrorRate(intent.getFloatExtra(EXTRA_ERROR_RATE, 0));
+        server.setTruncateRate(intent.getFloatExtra(EXTRA_TRUNCATE_RATE, 0));
+        server.setEscapedPlaceNames(intent.getBooleanExtra(EXTRA_ESCAPED_NAMES, true));
+
+        new HarnessTask().execute();
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                server.stop();
+            }
+        }).start();
+    }
+
+    /**
+     * Starts the server and runs the harness off the main thread.
+     */
+    private class HarnessTask extends AsyncTask<Void, String, String> {
+
+        @Override
+        protected String doInBackground(Void... voids) {
+            Intent intent = getIntent();
+            String benchmark = intent.getStringExtra(EXTRA_BENCHMARK);
+            if (benchmark != null) {
+                return runBenchmark(benchmark, intent);
+            }
+
+            try {
+                server.start();
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Problem starting the stand-in server", e);
+                return "Could not start the stand-in server: " + e;
+            }
+
+            if (intent.getBooleanExtra(EXTRA_LAUNCH_APP, false)) {
+                Intent appIntent = new Intent(LoadHarnessActivity.this, EarthquakeActivity.class);
+                appIntent.putExtra(EarthquakeActivity.EXTRA_REQUEST_URL, server.getQueryUrl());
+                startActivity(appIntent);
+                return "Serving " + server.getQueryUrl();
+            }
+
+            // Ask for every feature the server has, in the same format the app uses
+            String requestUrl = Uri.parse(server.getQueryUrl()).buildUpon()
+                    .appendQueryParameter("format", "geojson")
+                    .appendQueryParameter("orderby", "time")
+                    .build().toString();
+            publishProgress("Loading " + requestUrl);
+
+            LoadHarness harness = new LoadHarness(LoadHarnessActivity.this, requestUrl,
+                    intent.getBooleanExtra(EXTRA_REUSE, false));
+            long durationMillis = intent.getLongExtra(EXTRA_DURATION_MILLIS, 0);
+            LoadHarness.Report report = durationMillis > 0
+                    ? harness.runFor(durationMillis)
+                    : harness.run(intent.getIntExtra(EXTRA_ITERATIONS, 10));
+            return report.toString();
+        }
+
+        /**
+         * Runs the benchmark with the given name, sized by {@link #EXTRA_FEATURES}.
+         */
+        private String runBenchmark(String benchmark, Intent intent) {
+            int count = intent.getIntExtra(EXTRA_FEATURES, 100000);
+            publishProgress("Running " + benchmark + " benchmark with " + count + " events");
+            try {
+                if ("export".equals(benchmark)) {
+                    return new ExportBenchmark(getCacheDir()).run(count);
+                } else if ("dedup".equals(benchmark)) {
+                    return new DeduplicationBenchmark().run(count);
+                } else if ("alerts".equals(benchmark)) {
+                    return new AlertRuleBenchmark().run(count);
+                } else if ("parse".equals(benchmark)) {
+                    return new ParseBenchmark().run(count);
+                } else if ("reuse".equals(benchmark)) {
+                    return new EarthquakeReuseBenchmark().run(count);
+                }
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Problem running the " + benchmark + " benchmark", e);
+                return "The " + benchmark + " benchmark failed: " + e;
+            }
+            return "Unknown benchmark: " + benchmark;
+        }
+
+        @Override
+        protected void onProgressUpdate(String... values) {
+            outputView.append(values[0] + "\n");
+        }
+
+        @Override
+        protected void onPostExecute(String result) {
+            outputView.append(result + "\n");
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.android.quakereport;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Measures how long it takes to parse a large GeoJSON response sequentially and with a
+ * {@link ParallelFeatureParser} on different numbers of threads.
+ */
+public class ParseBenchmark {
+
+    private static final String LOG_TAG = ParseBenchmark.class.getName();
+
+    /** Number of times each parser is run, after one warm up run. The fastest run is kept. */
+    private static final int RUNS = 3;
+
+    /**
+     * Parses a synthetic response of {@code count} earthquakes with each parser.
+     * @return a summary of the results, one line per parser.
+     */
+    public String run(int count) {
+        String json = new FakeUsgsServer().createFeed(count);
+        StringBuilder results = new StringBuilder();
+
+        // Neither side reuses earthquakes from a registry, so every run parses everything
+        QueryUtils.extractFeatureFromJsonSequentially(json, null);
+        List<Earthquake> parsed = null;
+        long sequentialMillis = Long.MAX_VALUE;
+        for (int run = 0; run < RUNS; run++) {
+            long start = SystemClock.elapsedRealtime();
+            parsed = QueryUtils.extractFeatureFromJsonSequentially(json, null);
+            sequentialMillis = Math.min(sequentialMillis, SystemClock.elapsedRealtime() - start);
+        }
+        sequentialMillis = Math.max(1, sequentialMillis);
+        String sequential = String.format(Locale.US,
+                "sequential: %d earthquakes from %d KB in %dms", parsed.size(),
+                json.length() / 1024, sequentialMillis);
+        Log.i(LOG_TAG, sequential);
+        results.append(sequential).append('\n');
+
+        for (int threads : new int[] {1, 2, 4, 8}) {
+            ParallelFeatureParser parser = new ParallelFeatureParser(threads);
+            try {
+                parser.parse(json);
+                List<Earthquake> earthquakes = null;
+                long millis = Long.MAX_VALUE;
+                for (int run = 0; run < RUNS; run++) {
+                    long start = SystemClock.elapsedRealtime();
+                    earthquakes = parser.parse(json);
+                    millis = Math.min(millis, SystemClock.elapsedRealtime() - start);
+                }
+                millis = Math.max(1, millis);
+
+                String result = String.format(Locale.US,
+                        "%d threads, %d earthquakes in %dms, speedup %.2fx", threads,
+                        earthquakes == null ? 0 : earthquakes.size(), millis,
+                        (double) sequentialMillis / millis);
+                Log.i(LOG_TAG, result);
+                results.append(result).append('\n');
+            } finally {
+                parser.shutdown();
+            }
+        }
+        return results.toString();
+    }
+}
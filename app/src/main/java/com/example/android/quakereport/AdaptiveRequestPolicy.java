@@ -0,0 +1,257 @@
+package com.example.android.quakereport;
+
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.telephony.TelephonyManager;
+
+import java.util.Locale;
+
+/**
+ * Decides how much earthquake data to ask for, in which format and how long to wait for it,
+ * from how good the network link is. On a slow link it asks for a small page in the compact
+ * text format and waits patiently for it, so that something shows up quickly. On a fast link it
+ * asks for a large batch of GeoJSON.
+ *
+ * The link is judged from the {@link LinkQualityEstimator}'s measurements of recent fetches
+ * from the primary server. Before there are any, the type of the active network (Wi-Fi, EDGE,
+ * LTE, ...) is used as a first guess.
+ */
+public class AdaptiveRequestPolicy {
+
+    /** How good a network link is. */
+    public enum LinkQuality {
+        POOR, MODERATE, GOOD
+    }
+
+    /** Format of the response to ask an FDSN event service for. */
+    public enum Format {
+        GEOJSON("geojson"),
+        TEXT("text");
+
+        private final String queryValue;
+
+        Format(String queryValue) {
+            this.queryValue = queryValue;
+        }
+
+        /**
+         * Gets the value of the "format" query parameter for this format.
+         */
+        public String getQueryValue() {
+            return queryValue;
+        }
+    }
+
+    /**
+     * A link is poor once this many fetches in a row have failed. A single failure is more
+     * likely to be a one-off, such as a server hiccup, than a bad link.
+     */
+    static final int POOR_CONSECUTIVE_FAILURES = 2;
+
+    /** A link is poor if it takes at least this long to get a response. */
+    private static final long POOR_LATENCY_MILLIS = 1000;
+
+    /** A link is poor below this throughput, which is about 200 kbit/s. */
+    private static final long POOR_THROUGHPUT_BYTES_PER_SECOND = 25 * 1024;
+
+    /** A link can only be good if it takes at most this long to get a response. */
+    private static final long GOOD_LATENCY_MILLIS = 250;
+
+    /** A link can only be good at or above this throughput, which is about 2 Mbit/s. */
+    private static final long GOOD_THROUGHPUT_BYTES_PER_SECOND = 250 * 1024;
+
+    /** Rough size of one earthquake in a GeoJSON response, in bytes. */
+    private static final int GEOJSON_BYTES_PER_EARTHQUAKE = 1000;
+
+    /** Rough size of one earthquake in a text response, in bytes. */
+    private static final int TEXT_BYTES_PER_EARTHQUAKE = 200;
+
+    /**
+     * Factor by which the read timeout exceeds the time the response is expected to take, so
+     * that a link which is only briefly slower than its estimate doesn't time out.
+     */
+    private static final int READ_TIMEOUT_MARGIN = 3;
+
+    /** Longest the read timeout is ever stretched to, in milliseconds. */
+    private static final int MAX_READ_TIMEOUT_MILLIS = 120000;
+
+    private final LinkQualityEstimator estimator;
+
+    /**
+     * Constructs a new {@link AdaptiveRequestPolicy}.
+     *
+     * @param estimator which measures the link to the primary server.
+     */
+    public AdaptiveRequestPolicy(LinkQualityEstimator estimator) {
+        this.estimator = estimator;
+    }
+
+    /**
+     * Creates the plan for the next request.
+     * @param networkInfo is the active network, or null if there isn't one.
+     * @return the {@link RequestPlan} to follow.
+     */
+    public RequestPlan createPlan(NetworkInfo networkInfo) {
+        LinkQuality quality = assessLink(networkInfo);
+
+        int limit;
+        Format format;
+        int connectTimeoutMillis;
+        int readTimeoutMillis;
+        switch (quality) {
+            case POOR:
+                // A small first page, in the format that takes the fewest bytes
+                limit = 10;
+                format = Format.TEXT;
+                connectTimeoutMillis = 30000;
+                readTimeoutMillis = 45000;
+                break;
+            case MODERATE:
+                limit = 50;
+                format = Format.GEOJSON;
+                connectTimeoutMillis = 20000;
+                readTimeoutMillis = 20000;
+                break;
+            default:
+                limit = 200;
+                format = Format.GEOJSON;
+                connectTimeoutMillis = 15000;
+                readTimeoutMillis = 10000;
+                break;
+        }
+
+        // If the throughput is known, make sure the response has time to arrive at that rate
+        long throughput = estimator.getThroughputBytesPerSecond();
+        if (throughput > 0) {
+            int bytesPerEarthquake = format == Format.TEXT
+                    ? TEXT_BYTES_PER_EARTHQUAKE : GEOJSON_BYTES_PER_EARTHQUAKE;
+            long expectedMillis = Math.max(0, estimator.getLatencyMillis())
+                    + (long) limit * bytesPerEarthquake * 1000 / throughput;
+            readTimeoutMillis = (int) Math.min(MAX_READ_TIMEOUT_MILLIS,
+                    Math.max(readTimeoutMillis, READ_TIMEOUT_MARGIN * expectedMillis));
+        }
+
+        return new RequestPlan(quality, limit, format, connectTimeoutMillis, readTimeoutMillis);
+    }
+
+    /**
+     * Judges how good the link is, from the estimator's measurements if there are any, or
+     * otherwise from the type of network. A link that has failed several times in a row is
+     * always poor.
+     * @param networkInfo is the active network, or null if there isn't one.
+     */
+    public LinkQuality assessLink(NetworkInfo networkInfo) {
+        // Measurements of one network say nothing about another
+        estimator.setNetwork(networkInfo == null
+                ? null : networkInfo.getType() + ":" + networkInfo.getSubtype());
+
+        LinkQuality networkQuality = classifyNetwork(networkInfo);
+        if (estimator.getConsecutiveFailures() >= POOR_CONSECUTIVE_FAILURES) {
+            return LinkQuality.POOR;
+        }
+        if (!estimator.hasEstimate()) {
+            return networkQuality;
+        }
+
+        long latency = estimator.getLatencyMillis();
+        long throughput = estimator.getThroughputBytesPerSecond();
+        boolean knowsThroughput = throughput >= 0;
+        if (latency >= POOR_LATENCY_MILLIS
+                || (knowsThroughput && throughput < POOR_THROUGHPUT_BYTES_PER_SECOND)) {
+            return LinkQuality.POOR;
+        }
+        // Only small responses have been seen, so trust the network type for the throughput
+        boolean fastEnough = knowsThroughput
+                ? throughput >= GOOD_THROUGHPUT_BYTES_PER_SECOND
+                : networkQuality == LinkQuality.GOOD;
+        if (latency <= GOOD_LATENCY_MILLIS && fastEnough) {
+            return LinkQuality.GOOD;
+        }
+        return LinkQuality.MODERATE;
+    }
+
+    /**
+     * Guesses how good a link is from the type of network. Wi-Fi and wired networks are taken
+     * to be good, 2G mobile networks poor, and anything else moderate until measured.
+     * @param networkInfo is the active network, or null if there isn't one.
+     */
+    static LinkQuality classifyNetwork(NetworkInfo networkInfo) {
+        if (networkInfo == null) {
+            return LinkQuality.MODERATE;
+        }
+        switch (networkInfo.getType()) {
+            case ConnectivityManager.TYPE_WIFI:
+            case ConnectivityManager.TYPE_ETHERNET:
+                return LinkQuality.GOOD;
+            case ConnectivityManager.TYPE_MOBILE:
+                switch (networkInfo.getSubtype()) {
+                    case TelephonyManager.NETWORK_TYPE_GPRS:
+                    case TelephonyManager.NETWORK_TYPE_EDGE:
+                    case TelephonyManager.NETWORK_TYPE_CDMA:
+                    case TelephonyManager.NETWORK_TYPE_1xRTT:
+                    case TelephonyManager.NETWORK_TYPE_IDEN:
+                        return LinkQuality.POOR;
+                    default:
+                        return LinkQuality.MODERATE;
+                }
+            default:
+                return LinkQuality.MODERATE;
+        }
+    }
+
+    /**
+     * What to ask an FDSN event service for, and how long to wait for it.
+     */
+    public static final class RequestPlan {
+        private final LinkQuality linkQuality;
+        private final int limit;
+        private final Format format;
+        private final int connectTimeoutMillis;
+        private final int readTimeoutMillis;
+
+        /**
+         * Constructs a new {@link RequestPlan}.
+         *
+         * @param linkQuality is how good the link was judged to be.
+         * @param limit is the most earthquakes to ask for.
+         * @param format is the format to ask for.
+         * @param connectTimeoutMillis is how long to wait for a connection.
+         * @param readTimeoutMillis is how long to wait for each read of the response.
+         */
+        public RequestPlan(LinkQuality linkQuality, int limit, Format format,
+                           int connectTimeoutMillis, int readTimeoutMillis) {
+            this.linkQuality = linkQuality;
+            this.limit = limit;
+            this.format = format;
+            this.connectTimeoutMillis = connectTimeoutMillis;
+            this.readTimeoutMillis = readTimeoutMillis;
+        }
+
+        public LinkQuality getLinkQuality() {
+            return linkQuality;
+        }
+
+        public int getLimit() {
+            return limit;
+        }
+
+        public Format getFormat() {
+            return format;
+        }
+
+        public int getConnectTimeoutMillis() {
+            return connectTimeoutMillis;
+        }
+
+        public int getReadTimeoutMillis() {
+            return readTimeoutMillis;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%s link: limit=%d format=%s connect=%dms read=%dms",
+                    linkQuality, limit, format.getQueryValue(), connectTimeoutMillis,
+                    readTimeoutMillis);
+        }
+    }
+}
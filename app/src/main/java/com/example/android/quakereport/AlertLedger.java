@@ -0,0 +1,97 @@
+package com.example.android.quakereport;
+
+import android.content.SharedPreferences;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+
+/**
+ * Remembers which earthquakes the user has already been alerted about, so the same earthquake
+ * never alerts twice, however many rules it matches and even across restarts of the app. Only
+ * the most recent alerts are kept, as older earthquakes drop out of the feed anyway.
+ */
+public class AlertLedger {
+
+    /** Key of the preference that sent alerts are stored under. */
+    private static final String PREFERENCE_KEY = "sent_alerts";
+
+    /**
+     * Most alerts remembered, which is more than a feed usually returns. When it's exceeded,
+     * the earthquakes that matched longest ago are forgotten first. The earthquakes matched in
+     * the current batch are always kept, however many there are.
+     */
+    static final int MAX_ENTRIES = 1000;
+
+    private final SharedPreferences preferences;
+
+    /** IDs of the earthquakes alerted about, in the order they were last matched. */
+    private final LinkedHashSet<String> sent = new LinkedHashSet<>();
+
+    /** Number of earthquakes matched since the batch began. */
+    private int batchSize;
+
+    /**
+     * Constructs a new {@link AlertLedger}, loading the alerts sent so far.
+     *
+     * @param preferences that the sent alerts are stored in.
+     */
+    public AlertLedger(SharedPreferences preferences) {
+        this.preferences = preferences;
+
+        // Stored as one string rather than a string set, so that the order is kept
+        String stored = preferences.getString(PREFERENCE_KEY, "");
+        for (String key : stored.split("\n")) {
+            // Alerts used to be recorded for each rule, as the rule's ID and a "|" before the
+            // event ID, or before the URL for alerts sent before earthquakes had IDs
+            key = key.substring(key.indexOf('|') + 1);
+            if (!key.isEmpty()) {
+                sent.add(key);
+            }
+        }
+    }
+
+    /**
+     * Starts a batch of earthquakes. Every earthquake marked from now on is kept, until a
+     * later batch has been saved.
+     */
+    public synchronized void beginBatch() {
+        batchSize = 0;
+    }
+
+    /**
+     * Records that the user has been alerted about the earthquake, unless they already have.
+     * Alerts are keyed by the event ID, so a revision of an earthquake, or another rule
+     * matching it, doesn't alert again. This should be called once for each earthquake that
+     * matches a rule in every batch, so that the earthquakes still in the feed are remembered.
+     * @return true if this earthquake hasn't been alerted about before, and so should be now.
+     */
+    public synchronized boolean markSent(Earthquake earthquake) {
+        // Move the earthquake to the end, as its alert is still needed while it's in the feed.
+        // Alerts sent before earthquakes had IDs were recorded by URL, and are moved to the ID.
+        boolean removedId = sent.remove(earthquake.getId());
+        boolean removedUrl = sent.remove(earthquake.getUrl());
+        sent.add(earthquake.getId());
+        batchSize++;
+        return !removedId && !removedUrl;
+    }
+
+    /**
+     * Forgets the oldest alerts beyond {@link #MAX_ENTRIES}, apart from the ones in the current
+     * batch, and writes the rest to the preferences in the background.
+     */
+    public synchronized void save() {
+        // Trimmed here rather than as earthquakes are marked, so a large batch can't push out
+        // the earthquakes it has yet to mark
+        Iterator<String> oldest = sent.iterator();
+        while (sent.size() > Math.max(MAX_ENTRIES, batchSize)) {
+            oldest.next();
+            oldest.remove();
+        }
+
+        StringBuilder stored = new StringBuilder();
+        for (String key : sent) {
+            stored.append(key).append('\n');
+        }
+        preferences.edit().putString(PREFERENCE_KEY, stored.toString()).apply();
+    }
+}
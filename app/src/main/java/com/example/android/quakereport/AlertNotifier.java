@@ -0,0 +1,208 @@
+package com.example.android.quakereport;
+
+import android.app.Notification;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.net.Uri;
+import android.preference.PreferenceManager;
+import android.support.v4.app.NotificationCompat;
+import android.util.Log;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Checks newly loaded earthquakes against the user's alert rules and posts a notification for
+ * each earthquake that matches a rule, unless it has already alerted about that earthquake. When
+ * a load brings more than a few new alerts at once, such as the first load after the rules
+ * change, they're grouped into a single summary notification instead.
+ */
+public final class AlertNotifier {
+
+    private static final String LOG_TAG = AlertNotifier.class.getName();
+
+    /** Tag of every alert notification, so their ids can't clash with other notifications. */
+    private static final String NOTIFICATION_TAG = "earthquake_alert";
+
+    /** Id of the summary notification. Earthquake notifications use their event id's hash. */
+    private static final int SUMMARY_NOTIFICATION_ID = 0;
+
+    /** Most alerts posted as their own notifications from one load, before they're grouped. */
+    private static final int MAX_SEPARATE_NOTIFICATIONS = 3;
+
+    /** Most earthquakes listed in the summary notification. */
+    private static final int MAX_SUMMARY_LINES = 5;
+
+    /** The rules text that {@link #engine} was built from. */
+    private static String engineRules;
+
+    /** Engine for the current rules, kept so the index isn't rebuilt on every load. */
+    private static AlertRuleEngine engine;
+
+    /** Record of the alerts already sent, loaded the first time it's needed. */
+    private static AlertLedger ledger;
+
+    /**
+     * Create a private constructor because no one should ever create a {@link AlertNotifier}
+     * object. This class is only meant to hold static variables and methods.
+     */
+    private AlertNotifier() {
+    }
+
+    /**
+     * Checks a batch of newly loaded earthquakes against the user's alert rules, and notifies
+     * the user about new matches. This reads preferences, so it should be called on a
+     * background thread.
+     * @param context of the app.
+     * @param earthquakes is the batch of earthquakes that was just loaded.
+     */
+    public static void checkForAlerts(Context context, List<Earthquake> earthquakes) {
+        if (earthquakes == null || earthquakes.isEmpty()) {
+            return;
+        }
+
+        SharedPreferences sharedPrefs = PreferenceManager.getDefaultSharedPreferences(context);
+        String rules = sharedPrefs.getString(
+                context.getString(R.string.settings_alert_rules_key),
+                context.getString(R.string.settings_alert_rules_default));
+
+        AlertRuleEngine currentEngine;
+        AlertLedger currentLedger;
+        synchronized (AlertNotifier.class) {
+            if (engine == null || !rules.equals(engineRules)) {
+                engine = new AlertRuleEngine(AlertRule.parseRules(rules));
+                engineRules = rules;
+            }
+            if (ledger == null) {
+                ledger = new AlertLedger(sharedPrefs);
+            }
+            currentEngine = engine;
+            currentLedger = ledger;
+        }
+        if (currentEngine.getRuleCount() == 0) {
+            return;
+        }
+
+        Map<Earthquake, AlertRule> newAlerts =
+                findNewAlerts(currentEngine, currentLedger, earthquakes);
+        // Saved even without new alerts, so the order of the earthquakes still in the feed is
+        // kept
+        currentLedger.save();
+        if (newAlerts.isEmpty()) {
+            return;
+        }
+
+        Log.v(LOG_TAG, "Posting " + newAlerts.size() + " alerts");
+        NotificationManager notificationManager = (NotificationManager)
+                context.getSystemService(Context.NOTIFICATION_SERVICE);
+        if (newAlerts.size() > MAX_SEPARATE_NOTIFICATIONS) {
+            notificationManager.notify(NOTIFICATION_TAG, SUMMARY_NOTIFICATION_ID,
+                    buildSummaryNotification(context, newAlerts.keySet()));
+            return;
+        }
+        for (Map.Entry<Earthquake, AlertRule> alert : newAlerts.entrySet()) {
+            Earthquake earthquake = alert.getKey();
+            notificationManager.notify(NOTIFICATION_TAG, earthquake.getId().hashCode(),
+                    buildNotification(context, earthquake, alert.getValue()));
+        }
+    }
+
+    /**
+     * Finds the earthquakes that match a rule and haven't been alerted about yet, recording
+     * them in the ledger.
+     * @return the first rule each new earthquake matched, by earthquake, in the order of the
+     * batch.
+     */
+    static Map<Earthquake, AlertRule> findNewAlerts(AlertRuleEngine engine, AlertLedger ledger,
+                                                    List<Earthquake> earthquakes) {
+        // Only mark each earthquake once, for the first rule it matched
+        Map<Earthquake, AlertRule> matched = new LinkedHashMap<>();
+        for (AlertRuleEngine.Match match : engine.evaluate(earthquakes)) {
+            if (!matched.containsKey(match.getEarthquake())) {
+                matched.put(match.getEarthquake(), match.getRule());
+            }
+        }
+
+        ledger.beginBatch();
+        Iterator<Map.Entry<Earthquake, AlertRule>> iterator = matched.entrySet().iterator();
+        while (iterator.hasNext()) {
+            if (!ledger.markSent(iterator.next().getKey())) {
+                iterator.remove();
+            }
+        }
+        return matched;
+    }
+
+    /**
+     * Builds one notification for many earthquakes, listing the first few of them, which opens
+     * the list of earthquakes when tapped.
+     */
+    private static Notification buildSummaryNotification(Context context,
+                                                         Collection<Earthquake> earthquakes) {
+        Intent listIntent = new Intent(context, EarthquakeActivity.class);
+        PendingIntent pendingIntent = PendingIntent.getActivity(
+                context, 0, listIntent, PendingIntent.FLAG_UPDATE_CURRENT);
+
+        int count = earthquakes.size();
+        String title = context.getResources().getQuantityString(
+                R.plurals.alert_summary_title, count, count);
+        NotificationCompat.InboxStyle style = new NotificationCompat.InboxStyle()
+                .setBigContentTitle(title);
+        String firstLine = null;
+        long latestTime = 0;
+        int lines = 0;
+        for (Earthquake earthquake : earthquakes) {
+            latestTime = Math.max(latestTime, earthquake.getTimeInMilliseconds());
+            if (lines < MAX_SUMMARY_LINES) {
+                String line = context.getString(R.string.alert_summary_line,
+                        earthquake.getMagnitude(), earthquake.getLocation());
+                if (firstLine == null) {
+                    firstLine = line;
+                }
+                style.addLine(line);
+                lines++;
+            }
+        }
+        if (count > lines) {
+            style.setSummaryText(context.getResources().getQuantityString(
+                    R.plurals.alert_summary_more, count - lines, count - lines));
+        }
+
+        return new NotificationCompat.Builder(context)
+                .setSmallIcon(R.drawable.ic_filter)
+                .setContentTitle(title)
+                .setContentText(firstLine)
+                .setNumber(count)
+                .setStyle(style)
+                .setWhen(latestTime)
+                .setContentIntent(pendingIntent)
+                .setAutoCancel(true)
+                .build();
+    }
+
+    /**
+     * Builds the notification for an earthquake, which opens its USGS page when tapped.
+     */
+    private static Notification buildNotification(Context context, Earthquake earthquake,
+                                                  AlertRule rule) {
+        Intent websiteIntent = new Intent(Intent.ACTION_VIEW, Uri.parse(earthquake.getUrl()));
+        PendingIntent pendingIntent = PendingIntent.getActivity(
+                context, 0, websiteIntent, PendingIntent.FLAG_UPDATE_CURRENT);
+
+        return new NotificationCompat.Builder(context)
+                .setSmallIcon(R.drawable.ic_filter)
+                .setContentTitle(context.getString(R.string.alert_title,
+                        earthquake.getMagnitude(), rule.getId()))
+                .setContentText(earthquake.getLocation())
+                .setWhen(earthquake.getTimeInMilliseconds())
+                .setContentIntent(pendingIntent)
+                .setAutoCancel(true)
+                .build();
+    }
+}
@@ -0,0 +1,168 @@
+package com.example.android.quakereport;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A rule saying which earthquakes the user wants to be alerted about: those of at least a given
+ * magnitude, either anywhere in the world or within a given distance of a point.
+ *
+ * Rules are written as text, separated by semicolons or new lines:
+ * <ul>
+ *     <li>"7" is any earthquake of magnitude 7 or more, anywhere in the world.</li>
+ *     <li>"5@35.68,139.69,300" is any earthquake of magnitude 5 or more, within 300 km of
+ *     latitude 35.68 and longitude 139.69.</li>
+ * </ul>
+ */
+public class AlertRule {
+
+    private static final String LOG_TAG = AlertRule.class.getName();
+
+    private final double minMagnitude;
+    private final double latitude;
+    private final double longitude;
+    private final double radiusKm;
+    private final String id;
+
+    /**
+     * Constructs a rule which matches earthquakes anywhere in the world.
+     *
+     * @param minMagnitude is the smallest magnitude which matches the rule.
+     */
+    public AlertRule(double minMagnitude) {
+        this(minMagnitude, Double.NaN, Double.NaN, Double.NaN);
+    }
+
+    /**
+     * Constructs a rule which matches earthquakes within a distance of a point.
+     *
+     * @param minMagnitude is the smallest magnitude which matches the rule.
+     * @param latitude of the center of the region, in decimal degrees.
+     * @param longitude of the center of the region, in decimal degrees.
+     * @param radiusKm is the radius of the region, in kilometres.
+     */
+    public AlertRule(double minMagnitude, double latitude, double longitude, double radiusKm) {
+        this.minMagnitude = minMagnitude;
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.radiusKm = radiusKm;
+        this.id = Double.isNaN(radiusKm)
+                ? String.format(Locale.US, "%s", minMagnitude)
+                : String.format(Locale.US, "%s@%s,%s,%s", minMagnitude, latitude, longitude,
+                radiusKm);
+    }
+
+    /**
+     * Parses a list of rules, ignoring (and logging) any which aren't written correctly.
+     * @param text holds the rules, separated by semicolons or new lines.
+     * @return the list of {@link AlertRule}s.
+     */
+    public static List<AlertRule> parseRules(String text) {
+        List<AlertRule> rules = new ArrayList<>();
+        if (text == null) {
+            return rules;
+        }
+
+        for (String ruleText : text.split("[;\\n]")) {
+            ruleText = ruleText.trim();
+            if (ruleText.isEmpty()) {
+                continue;
+            }
+            try {
+                rules.add(parseRule(ruleText));
+            } catch (IllegalArgumentException e) {
+                Log.e(LOG_TAG, "Ignoring badly written alert rule: " + ruleText, e);
+            }
+        }
+        return rules;
+    }
+
+    /**
+     * Parses a single rule, such as "7" or "5@35.68,139.69,300".
+     * @throws IllegalArgumentException if the rule isn't written correctly.
+     */
+    private static AlertRule parseRule(String text) {
+        int separator = text.indexOf('@');
+        if (separator < 0) {
+            return new AlertRule(Double.parseDouble(text));
+        }
+
+        double minMagnitude = Double.parseDouble(text.substring(0, separator).trim());
+        String[] region = text.substring(separator + 1).split(",");
+        if (region.length != 3) {
+            throw new IllegalArgumentException("Expected latitude,longitude,radius");
+        }
+        double latitude = Double.parseDouble(region[0].trim());
+        double longitude = Double.parseDouble(region[1].trim());
+        double radiusKm = Double.parseDouble(region[2].trim());
+        if (Math.abs(latitude) > 90 || Math.abs(longitude) > 180 || !(radiusKm > 0)) {
+            throw new IllegalArgumentException("Region is out of range");
+        }
+        return new AlertRule(minMagnitude, latitude, longitude, radiusKm);
+    }
+
+    /**
+     * Gets a string which identifies the rule, made from its values.
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * Gets the smallest magnitude which matches the rule.
+     */
+    public double getMinMagnitude() {
+        return minMagnitude;
+    }
+
+    /**
+     * Checks whether the rule matches earthquakes anywhere in the world.
+     */
+    public boolean isWorldwide() {
+        return Double.isNaN(radiusKm);
+    }
+
+    /**
+     * Gets the latitude of the center of the region, or NaN for a worldwide rule.
+     */
+    public double getLatitude() {
+        return latitude;
+    }
+
+    /**
+     * Gets the longitude of the center of the region, or NaN for a worldwide rule.
+     */
+    public double getLongitude() {
+        return longitude;
+    }
+
+    /**
+     * Gets the radius of the region in kilometres, or NaN for a worldwide rule.
+     */
+    public double getRadiusKm() {
+        return radiusKm;
+    }
+
+    /**
+     * Checks whether the earthquake matches the rule.
+     * @return true if the earthquake is big enough and, for a regional rule, inside the region.
+     */
+    public boolean matches(Earthquake earthquake) {
+        if (!(earthquake.getMagnitude() >= minMagnitude)) {
+            return false;
+        }
+        if (isWorldwide()) {
+            return true;
+        }
+        return earthquake.hasCoordinates() && GeoUtils.distanceKm(latitude, longitude,
+                earthquake.getLatitude(), earthquake.getLongitude()) <= radiusKm;
+    }
+
+    @Override
+    public String toString() {
+        return id;
+    }
+}
@@ -0,0 +1,246 @@
+package com.example.android.quakereport;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Finds which {@link AlertRule}s each earthquake matches, without checking every rule against
+ * every earthquake.
+ *
+ * The rules are indexed when the engine is created:
+ * <ul>
+ *     <li>Worldwide rules are sorted by magnitude threshold, so the rules an earthquake matches
+ *     are simply those before the first threshold above its magnitude, found by binary
+ *     search.</li>
+ *     <li>Regional rules are put into buckets on a grid of latitude and longitude cells, in
+ *     every cell their region overlaps. Each bucket is sorted by magnitude threshold in the same
+ *     way, so an earthquake is only checked against the rules in its own cell which it is big
+ *     enough for, and only those need an exact distance check.</li>
+ * </ul>
+ *
+ * An engine never changes once it's created, so it can be shared between threads.
+ */
+public class AlertRuleEngine {
+
+    /** Size of each grid cell, in degrees of latitude and longitude. */
+    private static final int CELL_DEGREES = 5;
+    private static final int ROWS = 180 / CELL_DEGREES;
+    private static final int COLUMNS = 360 / CELL_DEGREES;
+
+    private final int ruleCount;
+    private final Bucket worldwideRules;
+
+    /** Regional rules for each grid cell, indexed by row * COLUMNS + column. Null if none. */
+    private final Bucket[] cells = new Bucket[ROWS * COLUMNS];
+
+    /**
+     * Constructs a new {@link AlertRuleEngine}, indexing the given rules.
+     *
+     * @param rules is the list of rules to evaluate earthquakes against.
+     */
+    public AlertRuleEngine(List<AlertRule> rules) {
+        ruleCount = rules.size();
+
+        List<AlertRule> worldwide = new ArrayList<>();
+        List<List<AlertRule>> regional = new ArrayList<>(cells.length);
+        for (int i = 0; i < cells.length; i++) {
+            regional.add(null);
+        }
+
+        for (AlertRule rule : rules) {
+            if (rule.isWorldwide()) {
+                worldwide.add(rule);
+            } else {
+                addToCells(rule, regional);
+            }
+        }
+
+        worldwideRules = new Bucket(worldwide);
+        for (int i = 0; i < cells.length; i++) {
+            if (regional.get(i) != null) {
+                cells[i] = new Bucket(regional.get(i));
+            }
+        }
+    }
+
+    /**
+     * Gets the number of rules the engine was created with.
+     */
+    public int getRuleCount() {
+        return ruleCount;
+    }
+
+    /**
+     * Finds every rule that the earthquake matches.
+     * @param earthquake is the earthquake to check.
+     * @param matches is the list that matching rules are added to.
+     */
+    public void findMatchingRules(Earthquake earthquake, List<AlertRule> matches) {
+        double magnitude = earthquake.getMagnitude();
+        if (Double.isNaN(magnitude)) {
+            return;
+        }
+
+        // Every worldwide rule up to the first one needing a bigger quake matches
+        int worldwideMatches = worldwideRules.countAtOrBelow(magnitude);
+        for (int i = 0; i < worldwideMatches; i++) {
+            matches.add(worldwideRules.rules[i]);
+        }
+
+        if (!earthquake.hasCoordinates()) {
+            return;
+        }
+
+        // Regional rules in the earthquake's cell, which it's big enough for, still need to be
+        // checked for distance
+        Bucket cell = cells[cellIndex(earthquake.getLatitude(), earthquake.getLongitude())];
+        if (cell == null) {
+            return;
+        }
+        int candidates = cell.countAtOrBelow(magnitude);
+        for (int i = 0; i < candidates; i++) {
+            AlertRule rule = cell.rules[i];
+            if (GeoUtils.distanceKm(rule.getLatitude(), rule.getLongitude(),
+                    earthquake.getLatitude(), earthquake.getLongitude()) <= rule.getRadiusKm()) {
+                matches.add(rule);
+            }
+        }
+    }
+
+    /**
+     * Evaluates a batch of earthquakes against every rule.
+     * @param earthquakes is the batch of earthquakes to check.
+     * @return one {@link Match} for each rule that each earthquake matches.
+     */
+    public List<Match> evaluate(List<Earthquake> earthquakes) {
+        List<Match> result = new ArrayList<>();
+        List<AlertRule> matchingRules = new ArrayList<>();
+        for (Earthquake earthquake : earthquakes) {
+            matchingRules.clear();
+            findMatchingRules(earthquake, matchingRules);
+            for (AlertRule rule : matchingRules) {
+                result.add(new Match(rule, earthquake));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Adds a regional rule to every cell that its region overlaps.
+     */
+    private static void addToCells(AlertRule rule, List<List<AlertRule>> regional) {
+        double radiusDegrees = rule.getRadiusKm() / GeoUtils.KM_PER_DEGREE;
+        double minLatitude = rule.getLatitude() - radiusDegrees;
+        double maxLatitude = rule.getLatitude() + radiusDegrees;
+        int minRow = row(Math.max(-90, minLatitude));
+        int maxRow = row(Math.min(90, maxLatitude));
+
+        // A degree of longitude gets shorter away from the equator, so the region is widest (in
+        // degrees) at the latitude closest to a pole. If it reaches a pole, it covers every
+        // longitude.
+        boolean allColumns = minLatitude <= -90 || maxLatitude >= 90;
+        int firstColumn = 0;
+        int columnCount = COLUMNS;
+        if (!allColumns) {
+            double widestLatitude = Math.max(Math.abs(minLatitude), Math.abs(maxLatitude));
+            double longitudeDegrees =
+                    radiusDegrees / Math.cos(Math.toRadians(widestLatitude));
+            // Leave a cell of margin, so a region almost all the way round can't wrap onto
+            // its own first column
+            if (longitudeDegrees < 180 - CELL_DEGREES) {
+                firstColumn = column(rule.getLongitude() - longitudeDegrees);
+                int lastColumn = column(rule.getLongitude() + longitudeDegrees);
+                // The region may wrap around the antimeridian
+                columnCount = (lastColumn - firstColumn + COLUMNS) % COLUMNS + 1;
+            }
+        }
+
+        for (int row = minRow; row <= maxRow; row++) {
+            for (int i = 0; i < columnCount; i++) {
+                int index = row * COLUMNS + (firstColumn + i) % COLUMNS;
+                List<AlertRule> cell = regional.get(index);
+                if (cell == null) {
+                    cell = new ArrayList<>();
+                    regional.set(index, cell);
+                }
+                cell.add(rule);
+            }
+        }
+    }
+
+    private static int cellIndex(double latitude, double longitude) {
+        return row(latitude) * COLUMNS + column(longitude);
+    }
+
+    private static int row(double latitude) {
+        return Math.max(0, Math.min(ROWS - 1, (int) Math.floor((latitude + 90) / CELL_DEGREES)));
+    }
+
+    private static int column(double longitude) {
+        int column = (int) Math.floor((longitude + 180) / CELL_DEGREES) % COLUMNS;
+        return column < 0 ? column + COLUMNS : column;
+    }
+
+    /**
+     * Rules sorted by magnitude threshold, with the thresholds kept in their own array so they
+     * can be binary searched.
+     */
+    private static class Bucket {
+        final AlertRule[] rules;
+        final double[] thresholds;
+
+        Bucket(List<AlertRule> unsorted) {
+            rules = unsorted.toArray(new AlertRule[unsorted.size()]);
+            Arrays.sort(rules, new Comparator<AlertRule>() {
+                @Override
+                public int compare(AlertRule left, AlertRule right) {
+                    return Double.compare(left.getMinMagnitude(), right.getMinMagnitude());
+                }
+            });
+            thresholds = new double[rules.length];
+            for (int i = 0; i < rules.length; i++) {
+                thresholds[i] = rules[i].getMinMagnitude();
+            }
+        }
+
+        /**
+         * Returns the number of rules whose threshold is at or below the magnitude.
+         */
+        int countAtOrBelow(double magnitude) {
+            int low = 0;
+            int high = thresholds.length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (thresholds[middle] <= magnitude) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+    }
+
+    /**
+     * An earthquake together with a rule that it matched.
+     */
+    public static class Match {
+        private final AlertRule rule;
+        private final Earthquake earthquake;
+
+        Match(AlertRule rule, Earthquake earthquake) {
+            this.rule = rule;
+            this.earthquake = earthquake;
+        }
+
+        public AlertRule getRule() {
+            return rule;
+        }
+
+        public Earthquake getEarthquake() {
+            return earthquake;
+        }
+    }
+}
@@ -1,19 +1,67 @@
 package com.example.android.quakereport;
 
 /**
- * This class represents an individual earthquake event.
+ * This class represents an individual earthquake event. It is immutable, and identified by the
+ * event ID the feed gave it. Feeds revise events as better data comes in, and each revision
+ * has a new {@link #getUpdated()} time, so the ID and updated time together identify one
+ * revision of an event.
  */
-public class Earthquake {
-    private String location;
-    private double magnitude;
-    private long timeInMilliseconds;
-    private String url;
+public final class Earthquake {
 
-    public Earthquake(String location, double magnitude, long timeInMilliseconds, String url) {
+    /** Updated time of an earthquake whose feed didn't say when it was last updated. */
+    public static final long UNKNOWN_UPDATED = 0;
+
+    private final String id;
+    private final long updated;
+    private final String location;
+    private final double magnitude;
+    private final long timeInMilliseconds;
+    private final String url;
+    private final double latitude;
+    private final double longitude;
+
+    /**
+     * Constructs a new {@link Earthquake}.
+     *
+     * @param id is the event ID given by the feed, which must not be null.
+     * @param updated is the (Unix) time in milliseconds the event was last updated, or
+     *                {@link #UNKNOWN_UPDATED}.
+     * @param location is the name of the location closest to the epicenter.
+     * @param magnitude is the earthquake's magnitude.
+     * @param timeInMilliseconds is the (Unix) time in milliseconds the earthquake occurred.
+     * @param url is the URL of the earthquake's page on the agency's website.
+     * @param latitude is the latitude of the epicenter, or NaN if it isn't known.
+     * @param longitude is the longitude of the epicenter, or NaN if it isn't known.
+     */
+    public Earthquake(String id, long updated, String location, double magnitude,
+                      long timeInMilliseconds, String url, double latitude, double longitude) {
+        if (id == null) {
+            throw new IllegalArgumentException("An earthquake needs an ID");
+        }
+        this.id = id;
+        this.updated = updated;
         this.location = location;
         this.magnitude = magnitude;
         this.timeInMilliseconds = timeInMilliseconds;
         this.url = url;
+        this.latitude = latitude;
+        this.longitude = longitude;
+    }
+
+    /**
+     * Gets the event ID the feed gave the earthquake.
+     * @return the ID, which is never null.
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * Gets the (Unix) time in milliseconds when the feed last updated the earthquake.
+     * @return the time, or {@link #UNKNOWN_UPDATED} if the feed didn't say.
+     */
+    public long getUpdated() {
+        return updated;
     }
 
     /**
@@ -47,4 +95,72 @@ public class Earthquake {
     public String getUrl() {
         return url;
     }
+
+    /**
+     * Gets the latitude of the earthquake's epicenter.
+     * @return the latitude in decimal degrees, or NaN if the feed didn't give one.
+     */
+    public double getLatitude() {
+        return latitude;
+    }
+
+    /**
+     * Gets the longitude of the earthquake's epicenter.
+     * @return the longitude in decimal degrees, or NaN if the feed didn't give one.
+     */
+    public double getLongitude() {
+        return longitude;
+    }
+
+    /**
+     * Checks whether the feed gave a location for the earthquake's epicenter.
+     * @return true if both the latitude and longitude are known.
+     */
+    public boolean hasCoordinates() {
+        return !Double.isNaN(latitude) && !Double.isNaN(longitude);
+    }
+
+    /**
+     * Checks whether another earthquake is the same event as this one, though maybe a
+     * different revision of it.
+     * @return true if both have the same ID.
+     */
+    public boolean isSameEvent(Earthquake other) {
+        return other != null && id.equals(other.id);
+    }
+
+    /**
+     * Two earthquakes are equal if every one of their values is the same.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Earthquake)) {
+            return false;
+        }
+        Earthquake other = (Earthquake) o;
+        return id.equals(other.id)
+                && updated == other.updated
+                && timeInMilliseconds == other.timeInMilliseconds
+                && Double.compare(magnitude, other.magnitude) == 0
+                && Double.compare(latitude, other.latitude) == 0
+                && Double.compare(longitude, other.longitude) == 0
+                && (location == null ? other.location == null : location.equals(other.location))
+                && (url == null ? other.url == null : url.equals(other.url));
+    }
+
+    /**
+     * Hashes the ID alone, which is enough to tell events apart and is cheap.
+     */
+    @Override
+    public int hashCode() {
+        return id.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "Earthquake{" + id + " M" + magnitude + " " + location + "}";
+    }
 }
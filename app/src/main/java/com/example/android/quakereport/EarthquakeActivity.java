@@ -23,6 +23,7 @@ import android.content.SharedPreferences;
 import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
 import android.net.Uri;
+import android.os.AsyncTask;
 import android.os.Bundle;
 import android.preference.PreferenceManager;
 import android.support.v7.app.AppCompatActivity;
@@ -34,7 +35,9 @@ import android.widget.AdapterView;
 import android.widget.ListView;
 import android.widget.ProgressBar;
 import android.widget.TextView;
+import android.widget.Toast;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -50,6 +53,24 @@ public class EarthquakeActivity extends AppCompatActivity implements LoaderManag
     private static final String USGS_REQUEST_URL =
             "http://earthquake.usgs.gov/fdsnws/event/1/query";
 
+    /**
+     * Optional Intent extra holding an FDSN query URL to use instead of {@link #USGS_REQUEST_URL}.
+     * This lets a test harness point the app at a local stand-in server. It is only honoured in
+     * debug builds, as this activity is exported and any other app could otherwise use it to
+     * replace the data the user sees.
+     */
+    public static final String EXTRA_REQUEST_URL =
+            "com.example.android.quakereport.extra.REQUEST_URL";
+
+    /**
+     * Optional boolean Intent extra which turns on the {@link RenderProfiler} for the list, so
+     * that scroll tests can measure frame times and getView() timings. Like
+     * {@link #EXTRA_REQUEST_URL}, it is only honoured in debug builds, so other apps can't
+     * switch on profiling in production.
+     */
+    public static final String EXTRA_PROFILE_RENDERING =
+            "com.example.android.quakereport.extra.PROFILE_RENDERING";
+
     /** TextView that is displayed when the list is empty */
     private TextView emptyStateTextView;
 
@@ -67,11 +88,23 @@ public class EarthquakeActivity extends AppCompatActivity implements LoaderManag
     /** Adapter for the list of earthquakes */
     private EarthquakeArrayAdapter mAdapter;
 
+    /** Profiler for the list, or null unless turned on with {@link #EXTRA_PROFILE_RENDERING} */
+    private RenderProfiler renderProfiler;
+
+    /** The export being run, or null if none has been started by this or an earlier instance */
+    private EarthquakeExportTask exportTask;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.earthquake_activity);
 
+        // Show the progress of an export that was started before the activity was recreated
+        exportTask = (EarthquakeExportTask) getLastCustomNonConfigurationInstance();
+        if (exportTask != null) {
+            exportTask.attach(this);
+        }
+
         // Setup the UI initially, which can then be updated with new data, each time the onCreate()
         // method is called
         setupUI();
@@ -114,6 +147,23 @@ public class EarthquakeActivity extends AppCompatActivity implements LoaderManag
         return networkInfo != null && networkInfo.isConnected();
     }
 
+    /**
+     * Gets the base FDSN query URL that earthquake data should be requested from. This is the
+     * USGS endpoint, unless this is a debug build and another one was supplied with
+     * {@link #EXTRA_REQUEST_URL}.
+     * @return the base query URL as a String.
+     */
+    private String getRequestUrl() {
+        if (!BuildConfig.DEBUG) {
+            return USGS_REQUEST_URL;
+        }
+        String requestUrl = getIntent().getStringExtra(EXTRA_REQUEST_URL);
+        if (requestUrl == null || requestUrl.isEmpty()) {
+            return USGS_REQUEST_URL;
+        }
+        return requestUrl;
+    }
+
     /**
      * Create the ListView and Adapter which will be used to update the display.
      */
@@ -132,6 +182,13 @@ public class EarthquakeActivity extends AppCompatActivity implements LoaderManag
         // so the list can be populated in the user interface
         earthquakeListView.setAdapter(mAdapter);
 
+        // If asked to, profile how smoothly the list scrolls and how long its rows take to bind
+        if (BuildConfig.DEBUG && getIntent().getBooleanExtra(EXTRA_PROFILE_RENDERING, false)) {
+            renderProfiler = new RenderProfiler(getWindowManager().getDefaultDisplay());
+            mAdapter.setRenderProfiler(renderProfiler);
+            earthquakeListView.setOnScrollListener(renderProfiler);
+        }
+
         // Set an item click listener on the ListView, which sends an intent to a web browser
         // to open a website with more information about the selected earthquake.
         earthquakeListView.setOnItemClickListener(new AdapterView.OnItemClickListener() {
@@ -157,7 +214,8 @@ public class EarthquakeActivity extends AppCompatActivity implements LoaderManag
 
     /**
      * Create the {@link EarthquakeLoader} and pass the USGS URL so it knows where to retrieve the
-     * data from. This method gets the user Preferences to be used to create the query URL.
+     * data from, followed by the URLs of any additional FDSN feeds the user has set up.
+     * This method gets the user Preferences to be used to create the query URLs.
      * Note that this method is called by the initLoader() method, but is only
      * invoked when a loader (with the ID that was passed into the initLoader() as an argument)
      * does not exist.
@@ -177,20 +235,45 @@ public class EarthquakeActivity extends AppCompatActivity implements LoaderManag
                 getString(R.string.settings_min_magnitude_key),
                 getString(R.string.settings_min_magnitude_default));
 
+        // Get the base URLs of any other agencies' FDSN feeds, separated by commas
+        String extraSources = sharedPrefs.getString(
+                getString(R.string.settings_extra_sources_key),
+                getString(R.string.settings_extra_sources_default));
+
+        // The USGS (or injected) feed always comes first, so that its copy of a quake is the one
+        // kept when several feeds report it
+        List<String> queryUrls = new ArrayList<>();
+        queryUrls.add(buildQueryUrl(getRequestUrl(), minMagnitude));
+        for (String extraSource : extraSources.split(",")) {
+            extraSource = extraSource.trim();
+            if (!extraSource.isEmpty()) {
+                queryUrls.add(buildQueryUrl(extraSource, minMagnitude));
+            }
+        }
+
+        // Create a new loader for the given URLs
+        return new EarthquakeLoader(this, queryUrls.toArray(new String[queryUrls.size()]));
+    }
+
+    /**
+     * Creates the query URL for an FDSN event service. The format and limit are left for the
+     * {@link EarthquakeLoader} to add, once it knows how good the network link is.
+     * @param baseUrl is the query URL of the service, without any parameters.
+     * @param minMagnitude is the smallest magnitude of earthquake to ask for.
+     * @return the query URL as a String.
+     */
+    private String buildQueryUrl(String baseUrl, String minMagnitude) {
         // Create a URI from the base query URL, then create a URI builder from this URI
-        Uri baseUri = Uri.parse(USGS_REQUEST_URL);
+        Uri baseUri = Uri.parse(baseUrl);
         Uri.Builder uriBuilder = baseUri.buildUpon();
 
         // Add the query parameters to the Uri.Builder, where the first argument is the key (name
         // of the parameter, as defined on the USGS Earthquakes API site) and the second is the
         // value.
-        uriBuilder.appendQueryParameter("format", "geojson");
-        uriBuilder.appendQueryParameter("limit", "10");
         uriBuilder.appendQueryParameter("minmag", minMagnitude);
         uriBuilder.appendQueryParameter("orderby", "time");
 
-        // Create a new loader for the given URL
-        return new EarthquakeLoader(this, uriBuilder.toString());
+        return uriBuilder.toString();
     }
 
     /**
@@ -235,6 +318,51 @@ public class EarthquakeActivity extends AppCompatActivity implements LoaderManag
         mAdapter.clear();
     }
 
+    /**
+     * Stops the {@link RenderProfiler} and logs what it has recorded, if rendering is being
+     * profiled, whenever the activity leaves the screen.
+     */
+    @Override
+    protected void onPause() {
+        super.onPause();
+        if (renderProfiler != null) {
+            renderProfiler.stop();
+            renderProfiler.logSummary();
+        }
+    }
+
+    /**
+     * Keeps a running export going across a configuration change, so the new instance of the
+     * activity can show its progress.
+     */
+    @Override
+    public Object onRetainCustomNonConfigurationInstance() {
+        if (exportTask != null && exportTask.getStatus() != AsyncTask.Status.FINISHED) {
+            return exportTask;
+        }
+        return null;
+    }
+
+    /**
+     * Takes the export's progress dialog down with the activity, so its window isn't leaked.
+     */
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (exportTask != null) {
+            exportTask.detach();
+        }
+    }
+
+    /**
+     * Gets the profiler for the list, so tests can assert on what it recorded.
+     * @return the {@link RenderProfiler}, or null if it wasn't turned on with
+     * {@link #EXTRA_PROFILE_RENDERING}.
+     */
+    public RenderProfiler getRenderProfiler() {
+        return renderProfiler;
+    }
+
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
         // Inflate the main.xml menu
@@ -251,7 +379,43 @@ public class EarthquakeActivity extends AppCompatActivity implements LoaderManag
             Intent settingsIntent = new Intent(this, SettingsActivity.class);
             startActivity(settingsIntent);
             return true;
+        } else if (id == R.id.action_export_csv) {
+            exportEarthquakes(EarthquakeExporter.Format.CSV);
+            return true;
+        } else if (id == R.id.action_export_geojson) {
+            exportEarthquakes(EarthquakeExporter.Format.GEOJSON);
+            return true;
         }
         return super.onOptionsItemSelected(item);
     }
+
+    /**
+     * Exports the earthquakes currently in the list to a file in the app's external files
+     * directory, in the background.
+     * @param format is the file format to export to.
+     */
+    private void exportEarthquakes(EarthquakeExporter.Format format) {
+        // Take a copy of the list, so that a reload can't change it while it's being written
+        List<Earthquake> earthquakes = new ArrayList<>(mAdapter.getCount());
+        for (int i = 0; i < mAdapter.getCount(); i++) {
+            earthquakes.add(mAdapter.getItem(i));
+        }
+        if (earthquakes.isEmpty()) {
+            Toast.makeText(this, R.string.export_nothing, Toast.LENGTH_SHORT).show();
+            return;
+        }
+
+        // Fall back to internal storage if external storage isn't available
+        File directory = getExternalFilesDir(null);
+        if (directory == null) {
+            directory = getFilesDir();
+        }
+
+        if (exportTask != null) {
+            exportTask.detach();
+        }
+        exportTask = new EarthquakeExportTask(this, earthquakes, format, directory);
+        exportTask.attach(this);
+        exportTask.execute();
+    }
 }
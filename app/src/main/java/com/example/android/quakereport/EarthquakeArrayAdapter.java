@@ -30,6 +30,9 @@ public class EarthquakeArrayAdapter extends ArrayAdapter<Earthquake> {
      */
     private static final String LOCATION_SEPARATOR = " of ";
 
+    /** Records how long each {@link #getView} call takes, or null if rendering isn't profiled */
+    private RenderProfiler renderProfiler;
+
     /**
      * Constructs a new {@link EarthquakeArrayAdapter}.
      *
@@ -40,12 +43,24 @@ public class EarthquakeArrayAdapter extends ArrayAdapter<Earthquake> {
         super(context, 0, earthquakes);
     }
 
+    /**
+     * Sets the {@link RenderProfiler} that the time spent inflating and binding each list item
+     * is recorded in.
+     * @param renderProfiler to record in, or null to stop recording.
+     */
+    public void setRenderProfiler(RenderProfiler renderProfiler) {
+        this.renderProfiler = renderProfiler;
+    }
+
     /**
      * Returns a list item view that displays information about the earthquake at the given position
      * in the list of earthquakes.
      */
     @Override
     public View getView(int position, View convertView, ViewGroup parent) {
+        RenderProfiler profiler = renderProfiler;
+        long startNanos = profiler != null ? System.nanoTime() : 0;
+
         // Check if an existing view is being reused, otherwise inflate the view
         View listItemView = convertView;
         if (listItemView == null) {
@@ -53,6 +68,14 @@ public class EarthquakeArrayAdapter extends ArrayAdapter<Earthquake> {
                     R.layout.earthquake_list_item, parent, false);
         }
 
+        long bindStartNanos = 0;
+        if (profiler != null) {
+            bindStartNanos = System.nanoTime();
+            if (convertView == null) {
+                profiler.recordInflate(bindStartNanos - startNanos);
+            }
+        }
+
         // Get the earthquake data for the list item position we want to update
         Earthquake currentEarthquake = getItem(position);
 
@@ -122,6 +145,10 @@ public class EarthquakeArrayAdapter extends ArrayAdapter<Earthquake> {
         dateView.setText(date);
         timeView.setText(time);
 
+        if (profiler != null) {
+            profiler.recordBind(System.nanoTime() - bindStartNanos);
+        }
+
         return listItemView;
     }
 
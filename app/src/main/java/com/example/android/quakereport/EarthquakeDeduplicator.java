@@ -0,0 +1,190 @@
+package com.example.android.quakereport;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Merges the earthquakes reported by several sources, treating two earthquakes from different
+ * sources as the same quake when they happened within a time and distance tolerance of each
+ * other.
+ *
+ * Rather than comparing every earthquake with every other one, all of them are sorted by time
+ * and swept in order. Each earthquake is only compared with the already merged earthquakes that
+ * happened no more than the time tolerance before it, so the cost is O(n log n) for the sort
+ * plus the size of that window for each earthquake.
+ */
+public class EarthquakeDeduplicator {
+
+    /**
+     * Default time tolerance, in milliseconds. This is the same as the USGS uses to associate
+     * solutions from different networks with one event.
+     */
+    public static final long DEFAULT_TIME_TOLERANCE_MILLIS = 16000;
+
+    /** Default distance tolerance between epicenters, in kilometres. */
+    public static final double DEFAULT_DISTANCE_TOLERANCE_KM = 100;
+
+    /** Most sources that can be merged, one per bit of the mask in {@link Candidate}. */
+    private static final int MAX_SOURCES = 32;
+
+    private final long timeToleranceMillis;
+    private final double distanceToleranceKm;
+
+    /**
+     * Constructs a new {@link EarthquakeDeduplicator} with the default tolerances.
+     */
+    public EarthquakeDeduplicator() {
+        this(DEFAULT_TIME_TOLERANCE_MILLIS, DEFAULT_DISTANCE_TOLERANCE_KM);
+    }
+
+    /**
+     * Constructs a new {@link EarthquakeDeduplicator}.
+     *
+     * @param timeToleranceMillis is the most two origin times can differ by for the same quake.
+     * @param distanceToleranceKm is the most two epicenters can be apart for the same quake.
+     */
+    public EarthquakeDeduplicator(long timeToleranceMillis, double distanceToleranceKm) {
+        this.timeToleranceMillis = timeToleranceMillis;
+        this.distanceToleranceKm = distanceToleranceKm;
+    }
+
+    /**
+     * Merges the lists of earthquakes from several sources.
+     *
+     * @param earthquakesBySource holds one list of earthquakes per source, in order of
+     *                            preference. When a quake is reported by more than one source,
+     *                            the earthquake from the earliest source in this list is kept.
+     * @return the merged list of earthquakes, with the most recent first.
+     */
+    public List<Earthquake> merge(List<List<Earthquake>> earthquakesBySource) {
+        if (earthquakesBySource.size() > MAX_SOURCES) {
+            throw new IllegalArgumentException("Can't merge more than " + MAX_SOURCES
+                    + " sources");
+        }
+
+        // Gather every earthquake along with the index of the source it came from
+        int total = 0;
+        for (List<Earthquake> earthquakes : earthquakesBySource) {
+            total += earthquakes.size();
+        }
+        Candidate[] candidates = new Candidate[total];
+        int next = 0;
+        for (int source = 0; source < earthquakesBySource.size(); source++) {
+            for (Earthquake earthquake : earthquakesBySource.get(source)) {
+                candidates[next++] = new Candidate(earthquake, source);
+            }
+        }
+
+        // Sort by time, so that possible duplicates are always close to each other
+        Arrays.sort(candidates, new Comparator<Candidate>() {
+            @Override
+            public int compare(Candidate left, Candidate right) {
+                return compareLongs(left.time, right.time);
+            }
+        });
+
+        // Sweep through in time order. merged stays sorted by time too, and windowStart is the
+        // first merged earthquake that is still within the time tolerance of the current one.
+        List<Candidate> merged = new ArrayList<>(total);
+        int windowStart = 0;
+        for (Candidate candidate : candidates) {
+            while (windowStart < merged.size()
+                    && merged.get(windowStart).time < candidate.time - timeToleranceMillis) {
+                windowStart++;
+            }
+
+            Candidate match = findClosestMatch(candidate, merged, windowStart);
+            if (match == null) {
+                merged.add(candidate);
+            } else {
+                match.absorb(candidate);
+            }
+        }
+
+        // Return the kept earthquakes with the most recent first, as the USGS orders them
+        List<Earthquake> result = new ArrayList<>(merged.size());
+        for (int i = merged.size() - 1; i >= 0; i--) {
+            result.add(merged.get(i).earthquake);
+        }
+        return result;
+    }
+
+    /**
+     * Finds the closest earthquake in the window which could be the same quake as the
+     * candidate, or null if there isn't one.
+     */
+    private Candidate findClosestMatch(Candidate candidate, List<Candidate> merged,
+                                       int windowStart) {
+        Earthquake earthquake = candidate.earthquake;
+        if (!earthquake.hasCoordinates()) {
+            return null;
+        }
+
+        Candidate closest = null;
+        double closestDistance = distanceToleranceKm;
+        for (int i = windowStart; i < merged.size(); i++) {
+            Candidate other = merged.get(i);
+
+            // A source never reports the same quake twice, so only look at other sources
+            if ((other.sourceMask & candidate.sourceMask) != 0
+                    || !other.earthquake.hasCoordinates()) {
+                continue;
+            }
+
+            // Cheap check on latitude alone, before working out the real distance
+            double latitudeKm = Math.abs(earthquake.getLatitude()
+                    - other.earthquake.getLatitude()) * GeoUtils.KM_PER_DEGREE;
+            if (latitudeKm > closestDistance) {
+                continue;
+            }
+
+            double distance = GeoUtils.distanceKm(
+                    earthquake.getLatitude(), earthquake.getLongitude(),
+                    other.earthquake.getLatitude(), other.earthquake.getLongitude());
+            if (distance <= closestDistance) {
+                closest = other;
+                closestDistance = distance;
+            }
+        }
+        return closest;
+    }
+
+    private static int compareLongs(long left, long right) {
+        return left < right ? -1 : (left == right ? 0 : 1);
+    }
+
+    /**
+     * An earthquake taking part in the merge, along with the sources that reported it.
+     */
+    private static class Candidate {
+        Earthquake earthquake;
+        /** The origin time used to order the merge, which is the first one seen. */
+        final long time;
+        /** The index of the source that {@link #earthquake} came from. */
+        int source;
+        /** One bit set for each source that has reported this quake. */
+        int sourceMask;
+
+        Candidate(Earthquake earthquake, int source) {
+            this.earthquake = earthquake;
+            this.time = earthquake.getTimeInMilliseconds();
+            this.source = source;
+            this.sourceMask = 1 << source;
+        }
+
+        /**
+         * Records that another source reported the same quake, keeping whichever earthquake
+         * came from the preferred source. The time is left alone, so the merged list stays in
+         * order.
+         */
+        void absorb(Candidate duplicate) {
+            sourceMask |= duplicate.sourceMask;
+            if (duplicate.source < source) {
+                earthquake = duplicate.earthquake;
+                source = duplicate.source;
+            }
+        }
+    }
+}
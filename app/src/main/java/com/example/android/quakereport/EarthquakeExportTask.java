@@ -0,0 +1,158 @@
+package com.example.android.quakereport;
+
+import android.app.Activity;
+import android.app.ProgressDialog;
+import android.content.Context;
+import android.content.DialogInterface;
+import android.os.AsyncTask;
+import android.util.Log;
+import android.widget.Toast;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Exports a list of {@link Earthquake}s to a file using an {@link EarthquakeExporter} on a
+ * background thread, while showing the progress in a dialog which lets the user cancel it.
+ *
+ * The task outlives the activity that started it when the device is rotated, so it only keeps
+ * the application context. The dialog belongs to whichever activity is currently attached, which
+ * must {@link #detach()} the task when it's destroyed and {@link #attach(Activity)} it again from
+ * the new instance.
+ */
+public class EarthquakeExportTask extends AsyncTask<Void, Integer, File> {
+
+    private static final String LOG_TAG = EarthquakeExportTask.class.getName();
+
+    private final Context context;
+    private final List<Earthquake> earthquakes;
+    private final EarthquakeExporter.Format format;
+    private final File directory;
+
+    /** The dialog shown in the attached activity, or null if no activity is attached */
+    private ProgressDialog progressDialog;
+
+    /** Number of earthquakes written so far, to restore the progress when reattached */
+    private int progress;
+
+    /**
+     * Constructs a new {@link EarthquakeExportTask}.
+     *
+     * @param context of the app, used to show messages once the export ends. Only its
+     *                application context is kept.
+     * @param earthquakes to export. The list must not be changed while the task runs.
+     * @param format of the file to write
+     * @param directory that the file should be written in
+     */
+    public EarthquakeExportTask(Context context, List<Earthquake> earthquakes,
+                                EarthquakeExporter.Format format, File directory) {
+        this.context = context.getApplicationContext();
+        this.earthquakes = earthquakes;
+        this.format = format;
+        this.directory = directory;
+    }
+
+    /**
+     * Shows the progress of the export in a dialog in the given activity, unless the export has
+     * already ended.
+     * @param activity which is now showing the export.
+     */
+    public void attach(Activity activity) {
+        detach();
+        if (getStatus() == Status.FINISHED || isCancelled()) {
+            return;
+        }
+
+        progressDialog = new ProgressDialog(activity);
+        progressDialog.setTitle(activity.getString(R.string.export_progress_title));
+        progressDialog.setProgressStyle(ProgressDialog.STYLE_HORIZONTAL);
+        progressDialog.setMax(earthquakes.size());
+        progressDialog.setProgress(progress);
+        progressDialog.setCancelable(true);
+        progressDialog.setOnCancelListener(new DialogInterface.OnCancelListener() {
+            @Override
+            public void onCancel(DialogInterface dialogInterface) {
+                cancel(false);
+            }
+        });
+        progressDialog.setButton(DialogInterface.BUTTON_NEGATIVE,
+                activity.getString(android.R.string.cancel),
+                new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialogInterface, int which) {
+                        dialogInterface.cancel();
+                    }
+                });
+        progressDialog.show();
+    }
+
+    /**
+     * Dismisses the progress dialog, so the activity showing it can be destroyed without leaking
+     * its window. The export carries on in the background.
+     */
+    public void detach() {
+        if (progressDialog != null) {
+            progressDialog.dismiss();
+            progressDialog = null;
+        }
+    }
+
+    /**
+     * Writes the file, returning it if the export finished, or null if it failed or was
+     * cancelled.
+     */
+    @Override
+    protected File doInBackground(Void... voids) {
+        String timestamp = new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.US).format(new Date());
+        File file = new File(directory, "earthquakes-" + timestamp + "." + format.getExtension());
+
+        EarthquakeExporter exporter = new EarthquakeExporter(format);
+        try {
+            boolean finished = exporter.export(earthquakes, file,
+                    new EarthquakeExporter.ProgressListener() {
+                        @Override
+                        public void onProgress(int written, int total) {
+                            publishProgress(written);
+                        }
+
+                        @Override
+                        public boolean isCancelled() {
+                            return EarthquakeExportTask.this.isCancelled();
+                        }
+                    });
+            return finished ? file : null;
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Problem exporting earthquakes to " + file, e);
+            return null;
+        }
+    }
+
+    @Override
+    protected void onProgressUpdate(Integer... values) {
+        progress = values[0];
+        if (progressDialog != null) {
+            progressDialog.setProgress(progress);
+        }
+    }
+
+    @Override
+    protected void onPostExecute(File file) {
+        detach();
+        if (file != null) {
+            Toast.makeText(context, context.getString(R.string.export_finished, file.getPath()),
+                    Toast.LENGTH_LONG).show();
+        } else {
+            Toast.makeText(context, R.string.export_failed, Toast.LENGTH_LONG).show();
+        }
+    }
+
+    @Override
+    protected void onCancelled(File file) {
+        detach();
+        Toast.makeText(context, R.string.export_cancelled, Toast.LENGTH_SHORT).show();
+    }
+}
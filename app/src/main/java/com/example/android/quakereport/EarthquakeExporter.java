@@ -0,0 +1,399 @@
+package com.example.android.quakereport;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Writes a list of {@link Earthquake}s to a CSV or GeoJSON file.
+ *
+ * Each earthquake is formatted on its own and encoded straight into a fixed size
+ * {@link ByteBuffer}, which is written to a {@link FileChannel} whenever it fills up. This means
+ * the whole document is never held in memory, however many earthquakes are exported. The data
+ * is written to a temporary file first, which is only renamed to the target file once the
+ * export has finished, so a cancelled or failed export never leaves a half-written file behind.
+ */
+public class EarthquakeExporter {
+
+    /** The file formats that earthquakes can be exported to. */
+    public enum Format {
+        CSV("csv"),
+        GEOJSON("geojson");
+
+        private final String extension;
+
+        Format(String extension) {
+            this.extension = extension;
+        }
+
+        /**
+         * Gets the file name extension for this format, without the dot.
+         */
+        public String getExtension() {
+            return extension;
+        }
+    }
+
+    /**
+     * Receives progress updates from an export, and lets the caller cancel it.
+     */
+    public interface ProgressListener {
+        /**
+         * Called every so often with the number of earthquakes written so far.
+         */
+        void onProgress(int written, int total);
+
+        /**
+         * Checked between earthquakes. Returning true stops the export.
+         */
+        boolean isCancelled();
+    }
+
+    /** Size of the buffer that encoded bytes are collected in before being written to disk. */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /** Number of earthquakes written between calls to {@link ProgressListener#onProgress}. */
+    private static final int PROGRESS_INTERVAL = 500;
+
+    private static final String CSV_HEADER = "id,time,latitude,longitude,magnitude,place,url\n";
+
+    private final Format format;
+    private final ByteBuffer byteBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final StringBuilder record = new StringBuilder(256);
+    private char[] charArray = new char[256];
+    private final CharsetEncoder encoder = Charset.forName("UTF-8").newEncoder();
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'", Locale.US);
+
+    /** The UTC day that {@link #datePrefix} was formatted for, counted from the epoch. */
+    private long cachedDay = Long.MIN_VALUE;
+    private String datePrefix;
+
+    /**
+     * Constructs a new {@link EarthquakeExporter}. An exporter reuses its buffers, so it can
+     * only run one export at a time.
+     *
+     * @param format is the file format to write.
+     */
+    public EarthquakeExporter(Format format) {
+        this.format = format;
+        dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+    }
+
+    /**
+     * Writes the earthquakes to the given file, replacing it if it already exists.
+     *
+     * @param earthquakes is the list of earthquakes to write.
+     * @param file is where the earthquakes should be written to.
+     * @param listener is notified of progress, and may cancel the export. It can be null.
+     * @return true if every earthquake was written, or false if the export was cancelled.
+     * @throws IOException if the file couldn't be written.
+     */
+    public boolean export(List<Earthquake> earthquakes, File file, ProgressListener listener)
+            throws IOException {
+        File tempFile = new File(file.getPath() + ".part");
+        FileOutputStream outputStream = new FileOutputStream(tempFile);
+        FileChannel channel = outputStream.getChannel();
+        boolean finished = false;
+
+        try {
+            byteBuffer.clear();
+            encoder.reset();
+
+            int total = earthquakes.size();
+            writeHeader(channel);
+            for (int i = 0; i < total; i++) {
+                if (listener != null && i % PROGRESS_INTERVAL == 0) {
+                    if (listener.isCancelled()) {
+                        return false;
+                    }
+                    listener.onProgress(i, total);
+                }
+                writeRecord(channel, earthquakes.get(i), i);
+            }
+            writeFooter(channel);
+            flush(channel);
+
+            if (listener != null) {
+                listener.onProgress(total, total);
+            }
+            finished = true;
+        } finally {
+            // close resources, and only keep the output if everything was written
+            channel.close();
+            outputStream.close();
+            if (!finished) {
+                tempFile.delete();
+            }
+        }
+
+        if (!tempFile.renameTo(file)) {
+            tempFile.delete();
+            throw new IOException("Could not rename " + tempFile + " to " + file);
+        }
+        return true;
+    }
+
+    /**
+     * Writes whatever comes before the first earthquake.
+     */
+    private void writeHeader(FileChannel channel) throws IOException {
+        record.setLength(0);
+        if (format == Format.CSV) {
+            record.append(CSV_HEADER);
+        } else {
+            record.append("{\"type\":\"FeatureCollection\",\"features\":[");
+        }
+        write(channel, record);
+    }
+
+    /**
+     * Formats a single earthquake and writes it.
+     * @param index is the position of the earthquake in the export.
+     */
+    private void writeRecord(FileChannel channel, Earthquake earthquake, int index)
+            throws IOException {
+        record.setLength(0);
+
+        if (format == Format.CSV) {
+            appendCsvField(earthquake.getId());
+            record.append(',');
+            appendIsoTime(earthquake.getTimeInMilliseconds());
+            record.append(',');
+            if (earthquake.hasCoordinates()) {
+                record.append(earthquake.getLatitude()).append(',')
+                        .append(earthquake.getLongitude());
+            } else {
+                record.append(',');
+            }
+            record.append(',');
+            // An unknown magnitude is left empty, rather than written as NaN
+            if (!Double.isNaN(earthquake.getMagnitude())) {
+                record.append(earthquake.getMagnitude());
+            }
+            record.append(',');
+            appendCsvField(earthquake.getLocation());
+            record.append(',');
+            appendCsvField(earthquake.getUrl());
+            record.append('\n');
+        } else {
+            if (index > 0) {
+                record.append(',');
+            }
+            record.append("\n{\"type\":\"Feature\",\"properties\":{\"mag\":");
+            // JSON has no NaN, so an unknown magnitude is written as null like the USGS does
+            if (Double.isNaN(earthquake.getMagnitude())) {
+                record.append("null");
+            } else {
+                record.append(earthquake.getMagnitude());
+            }
+            record.append(",\"place\":");
+            appendJsonString(record, earthquake.getLocation());
+            record.append(",\"time\":").append(earthquake.getTimeInMilliseconds());
+            if (earthquake.getUpdated() != Earthquake.UNKNOWN_UPDATED) {
+                record.append(",\"updated\":").append(earthquake.getUpdated());
+            }
+            record.append(",\"url\":");
+            appendJsonString(record, earthquake.getUrl());
+            record.append("},\"geometry\":");
+            if (earthquake.hasCoordinates()) {
+                record.append("{\"type\":\"Point\",\"coordinates\":[")
+                        .append(earthquake.getLongitude()).append(',')
+                        .append(earthquake.getLatitude()).append("]}");
+            } else {
+                record.append("null");
+            }
+            record.append(",\"id\":");
+            appendJsonString(record, earthquake.getId());
+            record.append('}');
+        }
+        write(channel, record);
+    }
+
+    /**
+     * Writes whatever comes after the last earthquake.
+     */
+    private void writeFooter(FileChannel channel) throws IOException {
+        if (format == Format.GEOJSON) {
+            record.setLength(0);
+            record.append("\n]}\n");
+            write(channel, record);
+        }
+    }
+
+    /**
+     * Encodes the characters as UTF-8 into the byte buffer, writing the buffer to the channel
+     * each time it fills up.
+     */
+    private void write(FileChannel channel, StringBuilder chars) throws IOException {
+        // Copy into an array backed CharBuffer, which the encoder handles much faster than a
+        // wrapped CharSequence
+        int length = chars.length();
+        if (charArray.length < length) {
+            charArray = new char[Math.max(length, charArray.length * 2)];
+        }
+        chars.getChars(0, length, charArray, 0);
+        CharBuffer charBuffer = CharBuffer.wrap(charArray, 0, length);
+        while (true) {
+            CoderResult result = encoder.encode(charBuffer, byteBuffer, false);
+            if (result.isOverflow()) {
+                drain(channel);
+            } else if (result.isError()) {
+                result.throwException();
+            } else {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Writes out everything left in the byte buffer.
+     */
+    private void flush(FileChannel channel) throws IOException {
+        CharBuffer empty = CharBuffer.allocate(0);
+        if (encoder.encode(empty, byteBuffer, true).isOverflow()
+                || encoder.flush(byteBuffer).isOverflow()) {
+            throw new CharacterCodingException();
+        }
+        drain(channel);
+    }
+
+    /**
+     * Writes the contents of the byte buffer to the channel and empties the buffer.
+     */
+    private void drain(FileChannel channel) throws IOException {
+        byteBuffer.flip();
+        while (byteBuffer.hasRemaining()) {
+            channel.write(byteBuffer);
+        }
+        byteBuffer.clear();
+
+        if (Thread.currentThread().isInterrupted()) {
+            throw new InterruptedIOException("Export interrupted");
+        }
+    }
+
+    /**
+     * Appends the time as an ISO 8601 UTC timestamp, e.g. "2016-10-19T13:05:09.120Z". Only the
+     * date is formatted with {@link SimpleDateFormat}, and only when it changes from the previous
+     * earthquake, as formatting every timestamp that way dominates the cost of a CSV export.
+     */
+    private void appendIsoTime(long timeInMilliseconds) {
+        long millisPerDay = 24L * 60 * 60 * 1000;
+        long day = floorDiv(timeInMilliseconds, millisPerDay);
+        if (day != cachedDay) {
+            cachedDay = day;
+            datePrefix = dateFormat.format(new Date(day * millisPerDay));
+        }
+
+        int millisOfDay = (int) (timeInMilliseconds - day * millisPerDay);
+        record.append(datePrefix);
+        appendPadded(millisOfDay / 3600000, 2);
+        record.append(':');
+        appendPadded(millisOfDay / 60000 % 60, 2);
+        record.append(':');
+        appendPadded(millisOfDay / 1000 % 60, 2);
+        record.append('.');
+        appendPadded(millisOfDay % 1000, 3);
+        record.append('Z');
+    }
+
+    /**
+     * Appends a non-negative number, padded with leading zeros to the given width.
+     */
+    private void appendPadded(int value, int width) {
+        for (int limit = 10, digits = 1; digits < width; limit *= 10, digits++) {
+            if (value < limit) {
+                record.append('0');
+            }
+        }
+        record.append(value);
+    }
+
+    /**
+     * Divides and rounds towards negative infinity, so times before 1970 land on the right day.
+     */
+    private static long floorDiv(long dividend, long divisor) {
+        long quotient = dividend / divisor;
+        if ((dividend % divisor != 0) && ((dividend < 0) != (divisor < 0))) {
+            quotient--;
+        }
+        return quotient;
+    }
+
+    /**
+     * Appends a CSV field, quoting it if it contains a comma, quote or line break.
+     */
+    private void appendCsvField(String value) {
+        if (value == null) {
+            return;
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0
+                && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            record.append(value);
+            return;
+        }
+
+        record.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                record.append('"');
+            }
+            record.append(c);
+        }
+        record.append('"');
+    }
+
+    /**
+     * Appends {@code value} to {@code out} as a quoted and escaped JSON string, or as null.
+     */
+    static void appendJsonString(StringBuilder out, String value) {
+        if (value == null) {
+            out.append("null");
+            return;
+        }
+
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    out.append("\\\"");
+                    break;
+                case '\\':
+                    out.append("\\\\");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        out.append(String.format(Locale.US, "\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+                    break;
+            }
+        }
+        out.append('"');
+    }
+}
@@ -2,13 +2,20 @@ package com.example.android.quakereport;
 
 import android.content.AsyncTaskLoader;
 import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.net.Uri;
 import android.util.Log;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
  * Loads a list of earthquakes by using an AsyncTask to perform the
- * network request to the given URL.
+ * network requests to the given URLs. When there is more than one URL, they are fetched at the
+ * same time and quakes reported by more than one of them are merged. How many earthquakes are
+ * asked for, in which format and how long to wait for them is decided by an
+ * {@link AdaptiveRequestPolicy}, from how good the network link is.
  */
 public class EarthquakeLoader extends AsyncTaskLoader<List<Earthquake>> {
     /* Query URLs */
@@ -20,7 +27,8 @@ public class EarthquakeLoader extends AsyncTaskLoader<List<Earthquake>> {
      * Constructs a new {@link EarthquakeLoader}.
      *
      * @param context of the activity
-     * @param urls to load data from
+     * @param urls to load data from, in order of preference, without the format and limit
+     *             parameters
      */
     public EarthquakeLoader(Context context, String... urls) {
         super(context);
@@ -38,7 +46,8 @@ public class EarthquakeLoader extends AsyncTaskLoader<List<Earthquake>> {
 
     /**
      * On the background thread, this method performs the network request, parses the JSON response,
-     * and returns a list of {@link Earthquake}s.
+     * checks the earthquakes against the user's alert rules, and returns a list of
+     * {@link Earthquake}s.
      * @return a list of {@link Earthquake}s.
      */
     @Override
@@ -50,7 +59,45 @@ public class EarthquakeLoader extends AsyncTaskLoader<List<Earthquake>> {
             return null;
         }
 
-        // Perform the network request, parse the response, and extract a list of earthquakes
-        return QueryUtils.fetchEarthquakeData(urls[0]);
+        // Decide what to ask for, and how long to wait for it, from how good the link to the
+        // first source is. The other sources are extras, so they don't get a say.
+        AdaptiveRequestPolicy policy = new AdaptiveRequestPolicy(
+                LinkQualityEstimator.getInstance(Uri.parse(urls[0]).getEncodedAuthority()));
+        AdaptiveRequestPolicy.RequestPlan plan = policy.createPlan(getActiveNetworkInfo());
+        Log.v(LOG_TAG, "Request plan: " + plan);
+
+        // Create a source for each URL, skipping any that are missing
+        List<EarthquakeSource> sources = new ArrayList<>(urls.length);
+        for (String url : urls) {
+            if (url != null) {
+                sources.add(new FdsnEarthquakeSource(url, plan));
+            }
+        }
+
+        // Perform the network requests, parse the responses, and merge them into a single list
+        // of earthquakes. Earthquakes that haven't changed since the last load are reused, and
+        // the ones that are no longer in any feed are forgotten afterwards.
+        EarthquakeRegistry registry = EarthquakeRegistry.getInstance();
+        registry.beginLoad();
+        MultiSourceFetcher fetcher =
+                new MultiSourceFetcher(sources, new EarthquakeDeduplicator());
+        List<Earthquake> earthquakes = fetcher.fetchEarthquakes();
+        int evicted = registry.endLoad();
+        Log.v(LOG_TAG, "Registry holds " + registry.size() + " earthquakes, forgot " + evicted);
+
+        // Notify the user about any new earthquakes that match their alert rules
+        AlertNotifier.checkForAlerts(getContext(), earthquakes);
+
+        return earthquakes;
+    }
+
+    /**
+     * Gets details on the currently active default data network.
+     * @return the {@link NetworkInfo}, or null if there is no active network.
+     */
+    private NetworkInfo getActiveNetworkInfo() {
+        ConnectivityManager connMgr = (ConnectivityManager)
+                getContext().getSystemService(Context.CONNECTIVITY_SERVICE);
+        return connMgr.getActiveNetworkInfo();
     }
 }
@@ -0,0 +1,124 @@
+package com.example.android.quakereport;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps one canonical {@link Earthquake} instance for each event, so that an event which hasn't
+ * changed between loads is represented by the same object every time, rather than a new one.
+ * The parsers check here before building an earthquake, so a refresh in which most events are
+ * unchanged only allocates for the new and revised ones, and the rest of the app can compare
+ * earthquakes by reference.
+ *
+ * Events that aren't seen during a load are forgotten at the end of it, so the registry only
+ * ever holds about as many earthquakes as the last load returned. Sources are parsed on several
+ * threads at once, so all of its methods are thread safe.
+ */
+public class EarthquakeRegistry {
+
+    /** Registry shared by the whole app, created the first time it's needed. */
+    private static EarthquakeRegistry instance;
+
+    /** The registered earthquakes, by ID. */
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    /** Number of the current load, which entries are stamped with when they're seen. */
+    private volatile int currentLoad;
+
+    /**
+     * Gets the registry shared by the whole app.
+     */
+    public static synchronized EarthquakeRegistry getInstance() {
+        if (instance == null) {
+            instance = new EarthquakeRegistry();
+        }
+        return instance;
+    }
+
+    /**
+     * Finds the registered instance of a revision of an event, without building an
+     * {@link Earthquake} to compare it with. This only works if the feed gives updated times.
+     * @param id is the event ID.
+     * @param updated is the time the event was last updated.
+     * @return the registered earthquake, or null if it isn't registered at that revision or the
+     * updated time is {@link Earthquake#UNKNOWN_UPDATED}.
+     */
+    public Earthquake find(String id, long updated) {
+        if (id == null || updated == Earthquake.UNKNOWN_UPDATED) {
+            return null;
+        }
+        Entry entry = entries.get(id);
+        if (entry == null || entry.earthquake.getUpdated() != updated) {
+            return null;
+        }
+        entry.lastSeenLoad = currentLoad;
+        return entry.earthquake;
+    }
+
+    /**
+     * Gets the canonical instance of an earthquake, registering it if there isn't one yet or it
+     * is a new revision of a registered event.
+     * @return the registered instance if it's equal to the given earthquake, or otherwise the
+     * given earthquake, which replaces it.
+     */
+    public Earthquake register(Earthquake earthquake) {
+        Entry entry = entries.get(earthquake.getId());
+        if (entry != null && entry.earthquake.equals(earthquake)) {
+            entry.lastSeenLoad = currentLoad;
+            return entry.earthquake;
+        }
+        entries.put(earthquake.getId(), new Entry(earthquake, currentLoad));
+        return earthquake;
+    }
+
+    /**
+     * Starts a new load. Every event that is found or registered from now on counts as seen in
+     * it.
+     */
+    public synchronized void beginLoad() {
+        currentLoad++;
+    }
+
+    /**
+     * Ends the current load, forgetting every event that wasn't seen during it.
+     * @return the number of events forgotten.
+     */
+    public synchronized int endLoad() {
+        int evicted = 0;
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().lastSeenLoad != currentLoad) {
+                iterator.remove();
+                evicted++;
+            }
+        }
+        return evicted;
+    }
+
+    /**
+     * Gets the number of events registered.
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Forgets every event.
+     */
+    public void clear() {
+        entries.clear();
+    }
+
+    /**
+     * A registered earthquake, and the last load it was seen in.
+     */
+    private static final class Entry {
+        final Earthquake earthquake;
+        volatile int lastSeenLoad;
+
+        Entry(Earthquake earthquake, int lastSeenLoad) {
+            this.earthquake = earthquake;
+            this.lastSeenLoad = lastSeenLoad;
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.example.android.quakereport;
+
+import java.util.List;
+
+/**
+ * A provider of earthquake data, such as the FDSN event service of a seismological agency.
+ */
+public interface EarthquakeSource {
+
+    /**
+     * Gets a name for the source which can be used in log messages.
+     * @return the name of the source.
+     */
+    String getName();
+
+    /**
+     * Fetches the source's earthquakes. This performs network requests, so it must not be
+     * called on the main thread.
+     * @return the list of {@link Earthquake}s, which is empty if the source couldn't be reached.
+     */
+    List<Earthquake> fetchEarthquakes();
+}
@@ -0,0 +1,87 @@
+package com.example.android.quakereport;
+
+import android.net.Uri;
+
+import java.util.List;
+
+/**
+ * An {@link EarthquakeSource} for an FDSN event web service which can return GeoJSON, such as
+ * the one run by the USGS. The USGS service can also be asked for the more compact text format.
+ */
+public class FdsnEarthquakeSource implements EarthquakeSource {
+
+    /** Host of the USGS event service, the only one whose text format responses can be used. */
+    private static final String USGS_HOST = "earthquake.usgs.gov";
+
+    /**
+     * Start of the URL of an earthquake's page on the USGS site, which the event ID is added to.
+     * The text format doesn't include these URLs, so this is how they're made instead.
+     */
+    private static final String USGS_EVENT_PAGE_URL =
+            "http://earthquake.usgs.gov/earthquakes/eventpage/";
+
+    /** The full query URL, including its parameters */
+    private final String queryUrl;
+
+    /** What to ask for and how long to wait, or null to use the query URL as it is */
+    private final AdaptiveRequestPolicy.RequestPlan plan;
+
+    /**
+     * Constructs a new {@link FdsnEarthquakeSource} which uses the query URL as it is.
+     *
+     * @param queryUrl is the full query URL, including its parameters.
+     */
+    public FdsnEarthquakeSource(String queryUrl) {
+        this(queryUrl, null);
+    }
+
+    /**
+     * Constructs a new {@link FdsnEarthquakeSource} which follows a {@link
+     * AdaptiveRequestPolicy.RequestPlan}.
+     *
+     * @param queryUrl is the query URL, including every parameter but the format and limit,
+     *                 which are added from the plan.
+     * @param plan is what to ask for and how long to wait, or null to use the query URL as it
+     *             is.
+     */
+    public FdsnEarthquakeSource(String queryUrl, AdaptiveRequestPolicy.RequestPlan plan) {
+        this.queryUrl = queryUrl;
+        this.plan = plan;
+    }
+
+    /**
+     * Uses the host name of the query URL as the name of the source.
+     */
+    @Override
+    public String getName() {
+        String host = Uri.parse(queryUrl).getHost();
+        return host != null ? host : queryUrl;
+    }
+
+    @Override
+    public List<Earthquake> fetchEarthquakes() {
+        if (plan == null) {
+            return QueryUtils.fetchEarthquakeData(queryUrl);
+        }
+
+        // Other agencies' text responses don't say where each earthquake's page is, so only
+        // ask the USGS for text
+        AdaptiveRequestPolicy.Format format = plan.getFormat();
+        if (!USGS_HOST.equals(Uri.parse(queryUrl).getHost())) {
+            format = AdaptiveRequestPolicy.Format.GEOJSON;
+        }
+
+        String requestUrl = Uri.parse(queryUrl).buildUpon()
+                .appendQueryParameter("format", format.getQueryValue())
+                .appendQueryParameter("limit", String.valueOf(plan.getLimit()))
+                .build().toString();
+        String response = QueryUtils.fetchResponse(requestUrl,
+                plan.getConnectTimeoutMillis(), plan.getReadTimeoutMillis());
+
+        if (format == AdaptiveRequestPolicy.Format.TEXT) {
+            return QueryUtils.extractFeatureFromText(response, USGS_EVENT_PAGE_URL,
+                    EarthquakeRegistry.getInstance());
+        }
+        return QueryUtils.extractFeatureFromJson(response, EarthquakeRegistry.getInstance());
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.android.quakereport;
+
+/**
+ * Helper methods for working with positions on the Earth's surface.
+ */
+public final class GeoUtils {
+
+    /** Mean radius of the Earth, in kilometres. */
+    public static final double EARTH_RADIUS_KM = 6371.0;
+
+    /** Number of kilometres in one degree of latitude. */
+    public static final double KM_PER_DEGREE = Math.PI * EARTH_RADIUS_KM / 180.0;
+
+    /**
+     * Create a private constructor because no one should ever create a {@link GeoUtils} object.
+     */
+    private GeoUtils() {
+    }
+
+    /**
+     * Returns the great-circle distance between two points, using the haversine formula.
+     * @param latitude1 is the latitude of the first point, in decimal degrees.
+     * @param longitude1 is the longitude of the first point, in decimal degrees.
+     * @param latitude2 is the latitude of the second point, in decimal degrees.
+     * @param longitude2 is the longitude of the second point, in decimal degrees.
+     * @return the distance in kilometres.
+     */
+    public static double distanceKm(double latitude1, double longitude1,
+                                    double latitude2, double longitude2) {
+        double deltaLatitude = Math.toRadians(latitude2 - latitude1);
+        double deltaLongitude = Math.toRadians(longitude2 - longitude1);
+        double sinLatitude = Math.sin(deltaLatitude / 2);
+        double sinLongitude = Math.sin(deltaLongitude / 2);
+
+        double a = sinLatitude * sinLatitude
+                + Math.cos(Math.toRadians(latitude1)) * Math.cos(Math.toRadians(latitude2))
+                * sinLongitude * sinLongitude;
+        return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+}
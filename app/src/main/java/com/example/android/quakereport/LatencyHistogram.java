@@ -0,0 +1,146 @@
+package com.example.android.quakereport;
+
+import java.util.Locale;
+
+/**
+ * Counts durations into a fixed set of buckets, so that a large number of them can be summed
+ * up without storing each one.
+ */
+public class LatencyHistogram {
+
+    private static final double NANOS_PER_MILLI = 1000000.0;
+
+    /** Upper bound (inclusive) of each bucket but the last, in nanoseconds, in ascending order. */
+    private final long[] upperBoundsNanos;
+
+    /** Number of durations in each bucket. The last bucket holds everything above the bounds. */
+    private final long[] counts;
+
+    private long count;
+    private long totalNanos;
+    private long maxNanos;
+
+    /**
+     * Constructs a new {@link LatencyHistogram}.
+     *
+     * @param upperBoundsNanos is the upper bound of each bucket in nanoseconds, in ascending
+     *                         order. An extra bucket is added for durations above the last one.
+     */
+    public LatencyHistogram(long... upperBoundsNanos) {
+        this.upperBoundsNanos = upperBoundsNanos.clone();
+        this.counts = new long[upperBoundsNanos.length + 1];
+    }
+
+    /**
+     * Adds a duration to the histogram.
+     * @param nanos is the duration in nanoseconds.
+     */
+    public synchronized void record(long nanos) {
+        int bucket = 0;
+        while (bucket < upperBoundsNanos.length && nanos > upperBoundsNanos[bucket]) {
+            bucket++;
+        }
+        counts[bucket]++;
+        count++;
+        totalNanos += nanos;
+        if (nanos > maxNanos) {
+            maxNanos = nanos;
+        }
+    }
+
+    /**
+     * Removes every duration from the histogram.
+     */
+    public synchronized void reset() {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = 0;
+        }
+        count = 0;
+        totalNanos = 0;
+        maxNanos = 0;
+    }
+
+    /**
+     * Gets the number of durations recorded.
+     */
+    public synchronized long getCount() {
+        return count;
+    }
+
+    /**
+     * Gets the number of durations recorded which were longer than the given duration. This is
+     * exact when the duration is one of the bucket bounds.
+     * @param nanos is the duration in nanoseconds.
+     */
+    public synchronized long getCountAbove(long nanos) {
+        long above = 0;
+        for (int i = 0; i < counts.length; i++) {
+            long lowerBound = i == 0 ? Long.MIN_VALUE : upperBoundsNanos[i - 1];
+            if (lowerBound >= nanos) {
+                above += counts[i];
+            }
+        }
+        return above;
+    }
+
+    /**
+     * Gets the mean of the durations recorded, in nanoseconds.
+     */
+    public synchronized long getMeanNanos() {
+        return count == 0 ? 0 : totalNanos / count;
+    }
+
+    /**
+     * Gets the longest duration recorded, in nanoseconds.
+     */
+    public synchronized long getMaxNanos() {
+        return maxNanos;
+    }
+
+    /**
+     * Gets an upper bound for a percentile of the durations recorded: the upper bound of the
+     * bucket which the percentile falls in, or the longest duration if that's smaller.
+     * @param percentile is a value between 0 and 100.
+     * @return the duration in nanoseconds, or 0 if nothing has been recorded.
+     */
+    public synchronized long getPercentileNanos(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+        long seen = 0;
+        for (int i = 0; i < upperBoundsNanos.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(upperBoundsNanos[i], maxNanos);
+            }
+        }
+        return maxNanos;
+    }
+
+    /**
+     * Gets the bucket bounds and counts as CSV, with one "upper_bound_ms,count" row per
+     * bucket. The last bucket's bound is empty, as it has none.
+     */
+    public synchronized String toCsv() {
+        StringBuilder csv = new StringBuilder("upper_bound_ms,count\n");
+        for (int i = 0; i < counts.length; i++) {
+            if (i < upperBoundsNanos.length) {
+                csv.append(String.format(Locale.US, "%.3f", upperBoundsNanos[i] / NANOS_PER_MILLI));
+            }
+            csv.append(',').append(counts[i]).append('\n');
+        }
+        return csv.toString();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format(Locale.US, "count=%d mean=%.2fms p50<=%.2fms p90<=%.2fms "
+                        + "p99<=%.2fms max=%.2fms",
+                count, getMeanNanos() / NANOS_PER_MILLI,
+                getPercentileNanos(50) / NANOS_PER_MILLI,
+                getPercentileNanos(90) / NANOS_PER_MILLI,
+                getPercentileNanos(99) / NANOS_PER_MILLI,
+                maxNanos / NANOS_PER_MILLI);
+    }
+}
@@ -0,0 +1,145 @@
+package com.example.android.quakereport;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Keeps a running estimate of how fast the current network link is, from the fetches that have
+ * completed over it. Each fetch gives a sample of the latency (the time to the first byte of
+ * the response, which stands in for the round-trip time) and, when the response is big enough
+ * to tell, of the throughput. The samples are combined as exponentially weighted moving
+ * averages, so the estimate follows the link as it changes while smoothing out one-off blips.
+ *
+ * There is one estimator for each server, as the path to one server says little about the path
+ * to another, and a server that is down would otherwise make the whole link look broken. The
+ * estimate is thrown away whenever the active network changes, as it says nothing about the
+ * new one. It is shared by every fetch from its server, so all of its methods are thread safe.
+ */
+public class LinkQualityEstimator {
+
+    /** Weight given to each new sample. Higher values follow changes faster but are noisier. */
+    private static final double SMOOTHING = 0.3;
+
+    /**
+     * Smallest response, in bytes, that gives a throughput sample. Smaller responses arrive in
+     * one or two packets, so how long they take says more about latency than throughput.
+     */
+    static final long MIN_THROUGHPUT_SAMPLE_BYTES = 8 * 1024;
+
+    /** Estimators shared by the whole app, by server, created the first time they're needed. */
+    private static final Map<String, LinkQualityEstimator> instances = new HashMap<>();
+
+    /** The network the estimate is for, or null if it hasn't been set. */
+    private String networkKey;
+
+    private double latencyMillis = -1;
+    private double throughputBytesPerSecond = -1;
+    private int sampleCount;
+    private int consecutiveFailures;
+
+    /**
+     * Gets the estimator shared by the whole app for fetches from a server.
+     * @param authority is the host, and port if it has one, of the server's URLs.
+     */
+    public static synchronized LinkQualityEstimator getInstance(String authority) {
+        String key = authority == null ? "" : authority;
+        LinkQualityEstimator instance = instances.get(key);
+        if (instance == null) {
+            instance = new LinkQualityEstimator();
+            instances.put(key, instance);
+        }
+        return instance;
+    }
+
+    /**
+     * Tells the estimator which network is active, and throws away the estimate if it's a
+     * different one to before.
+     * @param networkKey identifies the network, e.g. by its type and subtype.
+     */
+    public synchronized void setNetwork(String networkKey) {
+        if (networkKey == null ? this.networkKey != null : !networkKey.equals(this.networkKey)) {
+            this.networkKey = networkKey;
+            reset();
+        }
+    }
+
+    /**
+     * Adds a sample from a completed fetch.
+     * @param latencyMillis is the time from starting the request to receiving the response
+     *                      headers.
+     * @param bytes is the size of the response body.
+     * @param transferMillis is the time taken to read the response body.
+     */
+    public synchronized void recordFetch(long latencyMillis, long bytes, long transferMillis) {
+        this.latencyMillis = smooth(this.latencyMillis, latencyMillis);
+        if (bytes >= MIN_THROUGHPUT_SAMPLE_BYTES) {
+            // Count at least a millisecond, so that a response which was already buffered
+            // doesn't look infinitely fast
+            double throughput = bytes * 1000.0 / Math.max(1, transferMillis);
+            throughputBytesPerSecond = smooth(throughputBytesPerSecond, throughput);
+        }
+        sampleCount++;
+        consecutiveFailures = 0;
+    }
+
+    /**
+     * Records that a fetch failed because of the link, e.g. it timed out or was cut off.
+     */
+    public synchronized void recordFailure() {
+        consecutiveFailures++;
+    }
+
+    /**
+     * Throws away the estimate.
+     */
+    public synchronized void reset() {
+        latencyMillis = -1;
+        throughputBytesPerSecond = -1;
+        sampleCount = 0;
+        consecutiveFailures = 0;
+    }
+
+    /**
+     * Returns true if at least one fetch has completed since the estimate was last thrown away.
+     */
+    public synchronized boolean hasEstimate() {
+        return sampleCount > 0;
+    }
+
+    /**
+     * Gets the estimated latency in milliseconds, or -1 if there is no estimate.
+     */
+    public synchronized long getLatencyMillis() {
+        return Math.round(latencyMillis);
+    }
+
+    /**
+     * Gets the estimated throughput in bytes per second, or -1 if no response has been big
+     * enough to tell.
+     */
+    public synchronized long getThroughputBytesPerSecond() {
+        return Math.round(throughputBytesPerSecond);
+    }
+
+    /**
+     * Gets the number of fetches which have failed since the last one that completed.
+     */
+    public synchronized int getConsecutiveFailures() {
+        return consecutiveFailures;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "latency=" + getLatencyMillis() + "ms throughput="
+                + getThroughputBytesPerSecond() + "B/s samples=" + sampleCount
+                + " failures=" + consecutiveFailures;
+    }
+
+    /**
+     * Combines a new sample with the current average, or starts the average from the sample if
+     * there isn't one yet.
+     */
+    private static double smooth(double average, double sample) {
+        return average < 0 ? sample : average + SMOOTHING * (sample - average);
+    }
+}
@@ -0,0 +1,94 @@
+package com.example.android.quakereport;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Fetches from several {@link EarthquakeSource}s at the same time, and merges their results
+ * with an {@link EarthquakeDeduplicator} so that a quake reported by more than one agency only
+ * appears once.
+ */
+public class MultiSourceFetcher {
+
+    private static final String LOG_TAG = MultiSourceFetcher.class.getName();
+
+    /** Maximum number of sources which are fetched from at the same time. */
+    private static final int MAX_CONCURRENT_FETCHES = 4;
+
+    /** Threads shared by every fetcher, which are only created once there is work for them. */
+    private static ExecutorService executor;
+
+    private final List<EarthquakeSource> sources;
+    private final EarthquakeDeduplicator deduplicator;
+
+    /**
+     * Constructs a new {@link MultiSourceFetcher}.
+     *
+     * @param sources to fetch from, in order of preference. When two sources report the same
+     *                quake, the one from the earlier source is kept.
+     * @param deduplicator which decides which earthquakes are the same quake.
+     */
+    public MultiSourceFetcher(List<EarthquakeSource> sources,
+                              EarthquakeDeduplicator deduplicator) {
+        this.sources = sources;
+        this.deduplicator = deduplicator;
+    }
+
+    /**
+     * Fetches from every source and merges the results. This blocks until every source has
+     * answered or failed, so it must not be called on the main thread.
+     * @return the merged list of {@link Earthquake}s, with the most recent first.
+     */
+    public List<Earthquake> fetchEarthquakes() {
+        // With only one source there's nothing to fetch in parallel, or to merge
+        if (sources.size() == 1) {
+            return sources.get(0).fetchEarthquakes();
+        }
+
+        List<Future<List<Earthquake>>> futures = new ArrayList<>(sources.size());
+        for (final EarthquakeSource source : sources) {
+            futures.add(getExecutor().submit(new Callable<List<Earthquake>>() {
+                @Override
+                public List<Earthquake> call() {
+                    return source.fetchEarthquakes();
+                }
+            }));
+        }
+
+        List<List<Earthquake>> results = new ArrayList<>(sources.size());
+        for (int i = 0; i < futures.size(); i++) {
+            List<Earthquake> earthquakes = Collections.emptyList();
+            try {
+                earthquakes = futures.get(i).get();
+            } catch (ExecutionException e) {
+                // A failing source shouldn't stop the others from being shown
+                Log.e(LOG_TAG, "Problem fetching from " + sources.get(i).getName(), e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                for (Future<List<Earthquake>> future : futures) {
+                    future.cancel(true);
+                }
+                return Collections.emptyList();
+            }
+            Log.v(LOG_TAG, sources.get(i).getName() + " returned " + earthquakes.size());
+            results.add(earthquakes);
+        }
+
+        return deduplicator.merge(results);
+    }
+
+    private static synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            executor = Executors.newFixedThreadPool(MAX_CONCURRENT_FETCHES);
+        }
+        return executor;
+    }
+}
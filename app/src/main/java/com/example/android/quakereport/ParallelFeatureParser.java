@@ -0,0 +1,435 @@
+package com.example.android.quakereport;
+
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Parses GeoJSON responses, on several threads when they're large.
+ *
+ * The response is first scanned once, without building any objects, to find where each element
+ * of the top-level "features" array starts and ends. If an {@link EarthquakeRegistry} is given,
+ * the ID and updated time of each feature are then read straight from the text, and features
+ * which are already registered at that revision are reused without being parsed. The remaining
+ * features are parsed on the calling thread if there are only a few of them, or otherwise split
+ * into chunks which are parsed on a thread pool, and the results are put back together in their
+ * original order.
+ */
+public class ParallelFeatureParser {
+
+    private static final String LOG_TAG = ParallelFeatureParser.class.getName();
+
+    /**
+     * Features are only parsed in parallel if they add up to at least this many characters (a
+     * few hundred features). Below this, splitting the work costs more than it saves.
+     */
+    static final int PARALLEL_PARSE_THRESHOLD = 256 * 1024;
+
+    /**
+     * Number of chunks made for each thread, so that a thread which finishes its chunk early
+     * can pick up another rather than sitting idle.
+     */
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    private static final String FEATURES_KEY = "\"features\"";
+    private static final String ID_KEY = "\"id\"";
+    private static final String PROPERTIES_KEY = "\"properties\"";
+    private static final String UPDATED_KEY = "\"updated\"";
+
+    private final int parallelism;
+    private final ExecutorService executor;
+
+    /**
+     * Constructs a new {@link ParallelFeatureParser}, with its own pool of threads.
+     *
+     * @param parallelism is the number of threads to parse on.
+     */
+    public ParallelFeatureParser(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+        this.executor = Executors.newFixedThreadPool(this.parallelism, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable,
+                        "FeatureParser-" + count.incrementAndGet());
+                // Don't keep the process alive just for these threads
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Stops the parser's threads. The parser can't be used afterwards.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * Parses the features of a GeoJSON FeatureCollection into new {@link Earthquake}s.
+     * @see #parse(String, EarthquakeRegistry)
+     */
+    public List<Earthquake> parse(String jsonResponse) {
+        return parse(jsonResponse, null);
+    }
+
+    /**
+     * Parses the features of a GeoJSON FeatureCollection into a list of {@link Earthquake}s,
+     * in the same order as in the response. If a feature can't be parsed, the problem is logged
+     * and the earthquakes before it are returned, just as the sequential parser returns the
+     * earthquakes it managed to parse.
+     *
+     * @param jsonResponse is the String that needs to be parsed.
+     * @param registry to reuse unchanged earthquakes from and register the others with, or null
+     *                 to always build new earthquakes.
+     * @return the list of earthquakes, or null if the response doesn't look like a
+     * FeatureCollection, so the caller can fall back to the sequential parser.
+     */
+    public List<Earthquake> parse(String jsonResponse, EarthquakeRegistry registry) {
+        int[] bounds = findFeatureBounds(jsonResponse);
+        if (bounds == null) {
+            return null;
+        }
+
+        // bounds holds the start and end of each feature, one after the other
+        int featureCount = bounds.length / 2;
+        Earthquake[] earthquakes = new Earthquake[featureCount];
+
+        // Reuse the features which haven't changed, and note down the rest to be parsed
+        int[] pending = new int[featureCount];
+        int pendingCount = 0;
+        long pendingChars = 0;
+        for (int i = 0; i < featureCount; i++) {
+            int start = bounds[2 * i];
+            if (registry != null) {
+                earthquakes[i] = registry.find(peekId(jsonResponse, start),
+                        peekUpdated(jsonResponse, start));
+            }
+            if (earthquakes[i] == null) {
+                pending[pendingCount++] = i;
+                pendingChars += bounds[2 * i + 1] - start;
+            }
+        }
+
+        int parsedCount;
+        if (pendingChars < PARALLEL_PARSE_THRESHOLD) {
+            parsedCount = parseFeatures(jsonResponse, bounds, pending, 0, pendingCount,
+                    registry, earthquakes);
+        } else {
+            parsedCount = parseFeaturesInParallel(jsonResponse, bounds, pending, pendingCount,
+                    registry, earthquakes);
+        }
+        return new ArrayList<>(Arrays.asList(earthquakes).subList(0, parsedCount));
+    }
+
+    /**
+     * Splits the pending features into chunks, and parses them on the thread pool.
+     * @return the number of earthquakes at the start of the array which are all there.
+     */
+    private int parseFeaturesInParallel(final String json, final int[] bounds,
+                                        final int[] pending, int pendingCount,
+                                        final EarthquakeRegistry registry,
+                                        final Earthquake[] earthquakes) {
+        int chunkCount = Math.max(1, Math.min(pendingCount, parallelism * CHUNKS_PER_THREAD));
+
+        List<Future<Integer>> futures = new ArrayList<>(chunkCount);
+        List<Integer> chunkStarts = new ArrayList<>(chunkCount);
+        for (int chunk = 0; chunk < chunkCount; chunk++) {
+            final int from = (int) ((long) chunk * pendingCount / chunkCount);
+            final int to = (int) ((long) (chunk + 1) * pendingCount / chunkCount);
+            if (to <= from) {
+                continue;
+            }
+            chunkStarts.add(pending[from]);
+            futures.add(executor.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() {
+                    return parseFeatures(json, bounds, pending, from, to, registry, earthquakes);
+                }
+            }));
+        }
+
+        // Everything before the first feature that failed is there
+        int parsedCount = earthquakes.length;
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                parsedCount = Math.min(parsedCount, futures.get(i).get());
+            } catch (ExecutionException e) {
+                Log.e(LOG_TAG, "Problem parsing the earthquake JSON results", e.getCause());
+                parsedCount = Math.min(parsedCount, chunkStarts.get(i));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                for (int j = i; j < futures.size(); j++) {
+                    futures.get(j).cancel(true);
+                }
+                return Math.min(parsedCount, chunkStarts.get(i));
+            }
+        }
+        return parsedCount;
+    }
+
+    /**
+     * Parses the features whose indexes are listed in {@code pending} from {@code from} up to
+     * {@code to}, and stores them in the earthquakes array. This may run on any thread.
+     * @return the index of the feature which couldn't be parsed, or the number of features if
+     * they all could be.
+     */
+    private static int parseFeatures(String json, int[] bounds, int[] pending, int from,
+                                     int to, EarthquakeRegistry registry,
+                                     Earthquake[] earthquakes) {
+        for (int i = from; i < to; i++) {
+            int feature = pending[i];
+            try {
+                JSONObject featureObject = new JSONObject(
+                        json.substring(bounds[2 * feature], bounds[2 * feature + 1]));
+                earthquakes[feature] = QueryUtils.extractEarthquake(featureObject, registry);
+            } catch (JSONException e) {
+                Log.e(LOG_TAG, "Problem parsing the earthquake JSON results", e);
+                return feature;
+            }
+        }
+        return earthquakes.length;
+    }
+
+    /**
+     * Finds where each element of the top-level "features" array starts and ends.
+     * @return the start (inclusive) and end (exclusive) of each element, one after the other,
+     * or null if there's no features array or the JSON is malformed.
+     */
+    static int[] findFeatureBounds(String json) {
+        int arrayStart = findFeaturesArray(json);
+        if (arrayStart < 0) {
+            return null;
+        }
+
+        int[] bounds = new int[256];
+        int count = 0;
+        int i = skipWhitespace(json, arrayStart + 1);
+        if (i < json.length() && json.charAt(i) == ']') {
+            return new int[0];
+        }
+        while (i < json.length()) {
+            int elementEnd = skipValue(json, i);
+            if (elementEnd < 0) {
+                return null;
+            }
+            if (count + 2 > bounds.length) {
+                bounds = Arrays.copyOf(bounds, bounds.length * 2);
+            }
+            bounds[count++] = i;
+            bounds[count++] = elementEnd;
+
+            i = skipWhitespace(json, elementEnd);
+            if (i >= json.length()) {
+                return null;
+            } else if (json.charAt(i) == ']') {
+                return Arrays.copyOf(bounds, count);
+            } else if (json.charAt(i) != ',') {
+                return null;
+            }
+            i = skipWhitespace(json, i + 1);
+        }
+        return null;
+    }
+
+    /**
+     * Finds the '[' which opens the value of the root object's "features" key.
+     * @return its index, or -1 if there isn't one.
+     */
+    private static int findFeaturesArray(String json) {
+        int i = skipWhitespace(json, 0);
+        if (i >= json.length() || json.charAt(i) != '{') {
+            return -1;
+        }
+        i = findMember(json, i, FEATURES_KEY);
+        return i >= 0 && json.charAt(i) == '[' ? i : -1;
+    }
+
+    /**
+     * Reads a feature's ID straight from the response text.
+     * @param featureStart is the index of the '{' which opens the feature.
+     * @return the ID, or null if there isn't a simple one, without escapes.
+     */
+    static String peekId(String json, int featureStart) {
+        int valueStart = findMember(json, featureStart, ID_KEY);
+        if (valueStart < 0 || json.charAt(valueStart) != '"') {
+            return null;
+        }
+        int valueEnd = skipString(json, valueStart);
+        if (valueEnd < 0) {
+            return null;
+        }
+        // Only look for a backslash between the quotes. Searching any further would scan the
+        // rest of the response for every feature when, as usual, there are no backslashes.
+        for (int i = valueStart + 1; i < valueEnd - 1; i++) {
+            if (json.charAt(i) == '\\') {
+                return null;
+            }
+        }
+        return json.substring(valueStart + 1, valueEnd - 1);
+    }
+
+    /**
+     * Reads the time a feature was last updated straight from the response text.
+     * @param featureStart is the index of the '{' which opens the feature.
+     * @return the time, or {@link Earthquake#UNKNOWN_UPDATED} if there isn't one that's a
+     * whole number.
+     */
+    static long peekUpdated(String json, int featureStart) {
+        int properties = findMember(json, featureStart, PROPERTIES_KEY);
+        if (properties < 0 || json.charAt(properties) != '{') {
+            return Earthquake.UNKNOWN_UPDATED;
+        }
+        int i = findMember(json, properties, UPDATED_KEY);
+        if (i < 0) {
+            return Earthquake.UNKNOWN_UPDATED;
+        }
+
+        boolean negative = json.charAt(i) == '-';
+        if (negative) {
+            i++;
+        }
+        int digitsStart = i;
+        long value = 0;
+        while (i < json.length() && json.charAt(i) >= '0' && json.charAt(i) <= '9'
+                && i - digitsStart < 18) {
+            value = value * 10 + (json.charAt(i) - '0');
+            i++;
+        }
+        // Leave anything that isn't a plain whole number to the real parser
+        if (i == digitsStart || i >= json.length() || json.charAt(i) == '.'
+                || json.charAt(i) == 'e' || json.charAt(i) == 'E'
+                || Character.isDigit(json.charAt(i))) {
+            return Earthquake.UNKNOWN_UPDATED;
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Finds the value of a member of a JSON object, looking only at the object's own members
+     * rather than those of any objects nested in it.
+     * @param objectStart is the index of the '{' which opens the object.
+     * @param quotedKey is the member's name, in quotes.
+     * @return the index the member's value starts at, or -1 if there is no such member.
+     */
+    private static int findMember(String json, int objectStart, String quotedKey) {
+        int i = skipWhitespace(json, objectStart + 1);
+
+        // Walk the object's keys, skipping over the values of all but the one wanted
+        while (i < json.length() && json.charAt(i) == '"') {
+            int keyEnd = skipString(json, i);
+            if (keyEnd < 0) {
+                return -1;
+            }
+            boolean isKey = keyEnd - i == quotedKey.length() && json.startsWith(quotedKey, i);
+
+            i = skipWhitespace(json, keyEnd);
+            if (i >= json.length() || json.charAt(i) != ':') {
+                return -1;
+            }
+            i = skipWhitespace(json, i + 1);
+            if (isKey) {
+                return i < json.length() ? i : -1;
+            }
+
+            i = skipValue(json, i);
+            if (i < 0) {
+                return -1;
+            }
+            i = skipWhitespace(json, i);
+            if (i >= json.length() || json.charAt(i) != ',') {
+                return -1;
+            }
+            i = skipWhitespace(json, i + 1);
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the index just after the JSON value starting at {@code i}, or -1 if it's
+     * malformed.
+     */
+    static int skipValue(String json, int i) {
+        if (i >= json.length()) {
+            return -1;
+        }
+        char c = json.charAt(i);
+        if (c == '"') {
+            return skipString(json, i);
+        }
+        if (c != '{' && c != '[') {
+            // A number, true, false or null runs until the next separator
+            while (i < json.length()) {
+                c = json.charAt(i);
+                if (c == ',' || c == '}' || c == ']' || Character.isWhitespace(c)) {
+                    break;
+                }
+                i++;
+            }
+            return i;
+        }
+
+        // An object or array runs until its brackets balance, ignoring any inside strings
+        int depth = 0;
+        while (i < json.length()) {
+            c = json.charAt(i);
+            if (c == '"') {
+                i = skipString(json, i);
+                if (i < 0) {
+                    return -1;
+                }
+                continue;
+            }
+            if (c == '{' || c == '[') {
+                depth++;
+            } else if (c == '}' || c == ']') {
+                depth--;
+                if (depth == 0) {
+                    return i + 1;
+                }
+            }
+            i++;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the index just after the JSON string whose opening quote is at {@code i}, or -1
+     * if it isn't closed.
+     */
+    static int skipString(String json, int i) {
+        i++;
+        while (i < json.length()) {
+            char c = json.charAt(i);
+            if (c == '\\') {
+                i += 2;
+            } else if (c == '"') {
+                return i + 1;
+            } else {
+                i++;
+            }
+        }
+        return -1;
+    }
+
+    private static int skipWhitespace(String json, int i) {
+        while (i < json.length() && Character.isWhitespace(json.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+}
@@ -1,5 +1,6 @@
 package com.example.android.quakereport;
 
+import android.os.SystemClock;
 import android.text.TextUtils;
 import android.util.Log;
 
@@ -7,7 +8,6 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -24,6 +24,15 @@ public final class QueryUtils {
 
     private static final String LOG_TAG = "QueryUtils";
 
+    /** How long to wait for a connection, unless the caller says otherwise. */
+    static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 15000;
+
+    /** How long to wait for each read of the response, unless the caller says otherwise. */
+    static final int DEFAULT_READ_TIMEOUT_MILLIS = 10000;
+
+    /** Parser for GeoJSON responses, created the first time one is received. */
+    private static ParallelFeatureParser parallelParser;
+
     /**
      * Create a private constructor because no one should ever create a {@link QueryUtils} object.
      * This class is only meant to hold static variables and methods, which can be accessed
@@ -33,32 +42,83 @@ public final class QueryUtils {
     }
 
     /**
-     * Query the USGS dataset and return a list of {@link Earthquake} objects.
+     * Query the USGS dataset and return a list of {@link Earthquake} objects, reusing unchanged
+     * ones from the app's {@link EarthquakeRegistry}.
      * @param requestUrl is the URL in String format, from which the earthquake data
      *                   should be fetched.
      */
     public static List<Earthquake> fetchEarthquakeData(String requestUrl) {
+        return fetchEarthquakeData(requestUrl, EarthquakeRegistry.getInstance());
+    }
+
+    /**
+     * Query the USGS dataset and return a list of {@link Earthquake} objects.
+     * @param requestUrl is the URL in String format, from which the earthquake data
+     *                   should be fetched.
+     * @param registry to reuse unchanged earthquakes from and register the others with, or null
+     *                 to always build new earthquakes.
+     */
+    public static List<Earthquake> fetchEarthquakeData(String requestUrl,
+                                                       EarthquakeRegistry registry) {
+        // Perform HTTP request to the URL and receive a JSON response back
+        String jsonResponse = fetchResponse(requestUrl,
+                DEFAULT_CONNECT_TIMEOUT_MILLIS, DEFAULT_READ_TIMEOUT_MILLIS);
+
+        // Extract relevant fields from the JSON response and return a list of {@link Earthquake}s
+        return extractFeatureFromJson(jsonResponse, registry);
+    }
+
+    /**
+     * Perform a HTTP request and return the unparsed response.
+     * @param requestUrl is the URL in String format, from which the response should be fetched.
+     * @param connectTimeoutMillis is how long to wait for a connection.
+     * @param readTimeoutMillis is how long to wait for each read of the response.
+     * @return the response, which is empty if the request failed.
+     */
+    static String fetchResponse(String requestUrl, int connectTimeoutMillis,
+                                int readTimeoutMillis) {
         // Create URL object
         URL url = createURL(requestUrl);
 
-        // Perform HTTP request to the URL and receive a JSON response back
-        String jsonResponse = null;
+        String response = null;
         try {
-            jsonResponse = makeHttpRequest(url);
+            response = makeHttpRequest(url, connectTimeoutMillis, readTimeoutMillis);
         } catch (IOException e) {
             Log.e(LOG_TAG, "Problem making the HTTP request.", e);
         }
+        return response;
+    }
 
-        // Extract relevant fields from the JSON response and return a list of {@link Earthquake}s
-        return extractFeatureFromJson(jsonResponse);
+    /**
+     * Return a list of {@link Earthquake} objects that has been built up from
+     * parsing a JSON response. Earthquakes which are already registered are reused rather than
+     * parsed again, and large responses are split up and parsed on several threads.
+     * @param jsonResponse is the String that needs to be parsed.
+     * @param registry to reuse unchanged earthquakes from and register the others with, or null
+     *                 to always build new earthquakes.
+     */
+    static List<Earthquake> extractFeatureFromJson(String jsonResponse,
+                                                   EarthquakeRegistry registry) {
+        // The parallel parser returns null if it can't find the features array, in which case
+        // the normal parser can report the problem.
+        if (!TextUtils.isEmpty(jsonResponse)) {
+            List<Earthquake> earthquakes = getParallelParser().parse(jsonResponse, registry);
+            if (earthquakes != null) {
+                return earthquakes;
+            }
+        }
+        return extractFeatureFromJsonSequentially(jsonResponse, registry);
     }
 
     /**
      * Return a list of {@link Earthquake} objects that has been built up from
-     * parsing a JSON response.
+     * parsing a whole JSON response on the calling thread.
      * @param jsonResponse is the String that needs to be parsed.
+     * @param registry to reuse unchanged earthquakes from and register the others with, or null
+     *                 to always build new earthquakes.
      */
-    private static List<Earthquake> extractFeatureFromJson(String jsonResponse) {
+    static List<Earthquake> extractFeatureFromJsonSequentially(String jsonResponse,
+                                                               EarthquakeRegistry registry) {
 
         // Create an empty List that we can start adding earthquakes to
         List<Earthquake> earthquakes = new ArrayList<>();
@@ -83,20 +143,9 @@ public final class QueryUtils {
 
                 // For each element in the features array, do the following
                 for (int i = 0; i < featuresArray.length(); i++) {
-                    // Get the JSONObject representing a particular earthquake
-                    JSONObject earthquake = featuresArray.optJSONObject(i);
-
-                    // Get the JSONObject representing the properties of that particular earthquake
-                    JSONObject earthquakeProperties = earthquake.optJSONObject("properties");
-
-                    // Get the magnitude, location, time, URL (of USGS map) for this earthquake
-                    double magnitude = earthquakeProperties.optDouble("mag");
-                    String location = earthquakeProperties.optString("place");
-                    long time = earthquakeProperties.optLong("time");
-                    String url = earthquakeProperties.optString("url");
-
-                    // Create a new Earthquake and store in list of earthquakes
-                    earthquakes.add(new Earthquake(location, magnitude, time, url));
+                    // Get the JSONObject representing a particular earthquake, and create a new
+                    // Earthquake from it to store in the list of earthquakes
+                    earthquakes.add(extractEarthquake(featuresArray.optJSONObject(i), registry));
                 }
 
             } catch (JSONException e) {
@@ -110,6 +159,175 @@ public final class QueryUtils {
         return earthquakes;
     }
 
+    /**
+     * Return a list of {@link Earthquake} objects that has been built up from parsing a
+     * response in the FDSN text format, which has one line per earthquake with fields
+     * separated by '|':
+     * EventID|Time|Latitude|Longitude|Depth/km|Author|Catalog|Contributor|ContributorID|
+     * MagType|Magnitude|MagAuthor|EventLocationName
+     * @param textResponse is the String that needs to be parsed.
+     * @param eventPageUrl is the start of the URL of each earthquake's page, which the format
+     *                     doesn't include. The event ID is added to the end of it.
+     * @param registry to reuse unchanged earthquakes from and register the others with, or null
+     *                 to always keep new earthquakes. As the format has no updated times,
+     *                 each line is parsed and then compared with the registered earthquake.
+     */
+    static List<Earthquake> extractFeatureFromText(String textResponse, String eventPageUrl,
+                                                   EarthquakeRegistry registry) {
+        List<Earthquake> earthquakes = new ArrayList<>();
+        if (TextUtils.isEmpty(textResponse)) {
+            return earthquakes;
+        }
+
+        int lineStart = 0;
+        while (lineStart < textResponse.length()) {
+            int lineEnd = textResponse.indexOf('\n', lineStart);
+            if (lineEnd < 0) {
+                lineEnd = textResponse.length();
+            }
+            String line = textResponse.substring(lineStart, lineEnd).trim();
+            lineStart = lineEnd + 1;
+
+            // Skip blank lines and the header, which starts with '#'
+            if (line.isEmpty() || line.charAt(0) == '#') {
+                continue;
+            }
+
+            String[] fields = line.split("\\|", -1);
+            if (fields.length < 13) {
+                Log.e(LOG_TAG, "Skipping malformed earthquake line: " + line);
+                continue;
+            }
+            try {
+                String id = fields[0];
+                long time = parseFdsnTime(fields[1]);
+                double latitude = Double.parseDouble(fields[2]);
+                double longitude = Double.parseDouble(fields[3]);
+                double magnitude = fields[10].isEmpty()
+                        ? Double.NaN : Double.parseDouble(fields[10]);
+                String location = fields[12];
+                Earthquake earthquake = new Earthquake(id, Earthquake.UNKNOWN_UPDATED,
+                        location, magnitude, time, eventPageUrl + id, latitude, longitude);
+                earthquakes.add(registry == null ? earthquake : registry.register(earthquake));
+            } catch (IllegalArgumentException e) {
+                // This includes NumberFormatException
+                Log.e(LOG_TAG, "Skipping malformed earthquake line: " + line, e);
+            }
+        }
+        return earthquakes;
+    }
+
+    /**
+     * Parses a time in the form used by the FDSN text format, such as
+     * "2016-10-15T14:47:56.930", which is in UTC. The fraction of a second is optional and may
+     * have any number of digits.
+     * @return the time in milliseconds since the epoch.
+     * @throws IllegalArgumentException if the time isn't in that form.
+     */
+    private static long parseFdsnTime(String time) {
+        if (time.length() < 19 || time.charAt(4) != '-' || time.charAt(7) != '-'
+                || time.charAt(10) != 'T' || time.charAt(13) != ':' || time.charAt(16) != ':') {
+            throw new IllegalArgumentException("Unexpected time: " + time);
+        }
+        int year = parseDigits(time, 0, 4);
+        int month = parseDigits(time, 5, 7);
+        int day = parseDigits(time, 8, 10);
+        int hour = parseDigits(time, 11, 13);
+        int minute = parseDigits(time, 14, 16);
+        int second = parseDigits(time, 17, 19);
+
+        // Only the first three digits of the fraction matter for milliseconds
+        int millis = 0;
+        if (time.length() > 20 && time.charAt(19) == '.') {
+            int end = Math.min(time.length(), 23);
+            millis = parseDigits(time, 20, end);
+            for (int i = end; i < 23; i++) {
+                millis *= 10;
+            }
+        }
+
+        // Count the days since 1970-01-01, treating the year as starting in March so that the
+        // leap day comes last
+        int y = month <= 2 ? year - 1 : year;
+        int era = (y >= 0 ? y : y - 399) / 400;
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        long days = era * 146097L + dayOfEra - 719468;
+
+        return ((days * 24 + hour) * 60 + minute) * 60000L + second * 1000L + millis;
+    }
+
+    /**
+     * Parses the decimal digits between {@code start} and {@code end} of a String.
+     * @throws IllegalArgumentException if any of them isn't a digit.
+     */
+    private static int parseDigits(String text, int start, int end) {
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                throw new IllegalArgumentException("Unexpected digit in: " + text);
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    /**
+     * Create an {@link Earthquake} from a single GeoJSON feature, or reuse the registered one
+     * if this revision of the event has been seen before.
+     * @param earthquake is the JSONObject of the feature.
+     * @param registry to reuse an unchanged earthquake from and register a new one with, or
+     *                 null to always build a new earthquake.
+     */
+    static Earthquake extractEarthquake(JSONObject earthquake, EarthquakeRegistry registry) {
+        // Get the JSONObject representing the properties of that particular earthquake
+        JSONObject earthquakeProperties = earthquake.optJSONObject("properties");
+
+        // Get the ID and the time the event was last updated first, as if this revision has
+        // been seen before there's no need to read anything else
+        String id = earthquake.optString("id", null);
+        long updated = earthquakeProperties.optLong("updated", Earthquake.UNKNOWN_UPDATED);
+        if (registry != null) {
+            Earthquake known = registry.find(id, updated);
+            if (known != null) {
+                return known;
+            }
+        }
+
+        // Get the magnitude, location, time, URL (of USGS map) for this earthquake
+        double magnitude = earthquakeProperties.optDouble("mag");
+        String location = earthquakeProperties.optString("place");
+        long time = earthquakeProperties.optLong("time");
+        String url = earthquakeProperties.optString("url");
+
+        // Get the epicenter, which GeoJSON gives as [longitude, latitude, depth]
+        double latitude = Double.NaN;
+        double longitude = Double.NaN;
+        JSONObject geometry = earthquake.optJSONObject("geometry");
+        JSONArray coordinates = geometry == null ? null : geometry.optJSONArray("coordinates");
+        if (coordinates != null && coordinates.length() >= 2) {
+            longitude = coordinates.optDouble(0);
+            latitude = coordinates.optDouble(1);
+        }
+
+        // Fall back to the URL, which is unique too, for feeds that don't give IDs
+        Earthquake parsed = new Earthquake(id != null ? id : url, updated, location, magnitude,
+                time, url, latitude, longitude);
+        return registry == null ? parsed : registry.register(parsed);
+    }
+
+    /**
+     * Gets the parser used for GeoJSON responses, creating it the first time it's needed.
+     */
+    private static synchronized ParallelFeatureParser getParallelParser() {
+        if (parallelParser == null) {
+            parallelParser = new ParallelFeatureParser(Runtime.getRuntime().availableProcessors());
+        }
+        return parallelParser;
+    }
+
     /**
      * Creates a URL object from a given string.
      *
@@ -127,11 +345,16 @@ public final class QueryUtils {
     }
 
     /**
-     * Create a HTTP request and return a String holding all the unparsed JSON data if successful
+     * Create a HTTP request and return a String holding all the unparsed data if successful.
+     * How long the request takes is recorded with the {@link LinkQualityEstimator} for its
+     * server.
      * @param url - the URL at which the network request should be made to retrieve the earthquake
      *            data
+     * @param connectTimeoutMillis - how long to wait for a connection
+     * @param readTimeoutMillis - how long to wait for each read of the response
      */
-    private static String makeHttpRequest(URL url) throws IOException {
+    private static String makeHttpRequest(URL url, int connectTimeoutMillis,
+                                          int readTimeoutMillis) throws IOException {
         String jsonResponse = "";
         // The HTTP client which will act as a communications link between the application and a URL
         HttpURLConnection connection = null;
@@ -142,22 +365,30 @@ public final class QueryUtils {
             // open a connection from the URL, set the request method and connect
             connection = (HttpURLConnection) url.openConnection();
             connection.setRequestMethod("GET");
-            connection.setReadTimeout(10000);
-            connection.setConnectTimeout(15000);
+            connection.setReadTimeout(readTimeoutMillis);
+            connection.setConnectTimeout(connectTimeoutMillis);
+            long requestStart = SystemClock.elapsedRealtime();
             connection.connect();
 
             // if the response code is successful, proceed to read from stream
             // otherwise, return early
             int responseCode = connection.getResponseCode();
             if (responseCode == 200) {
+                long responseStart = SystemClock.elapsedRealtime();
                 inputStream = connection.getInputStream();
                 jsonResponse = readFromStream(inputStream);
+
+                // The response is almost all ASCII, so its length is close enough to its size
+                LinkQualityEstimator.getInstance(url.getAuthority()).recordFetch(
+                        responseStart - requestStart, jsonResponse.length(),
+                        SystemClock.elapsedRealtime() - responseStart);
             } else {
                 Log.e(LOG_TAG, "Error Response Code: " + responseCode);
             }
 
         } catch (IOException e) {
             Log.e(LOG_TAG, "Error retrieving JSON response. Check internet connection?", e);
+            LinkQualityEstimator.getInstance(url.getAuthority()).recordFailure();
         } finally {
             // disconnect and close resources
             if (connection != null) {
@@ -175,26 +406,26 @@ public final class QueryUtils {
 
     /**
      * Convert the {@link InputStream} into a String which contains the
-     * whole JSON response from the server.
+     * whole response from the server, exactly as it was sent. Line breaks are kept, as the text
+     * format has one earthquake per line.
      */
     private static String readFromStream(InputStream inputStream) throws IOException {
         StringBuilder output = new StringBuilder();
 
-        // if there is an InputStream, create a BufferedReader to read from it into a StringBuilder
+        // if there is an InputStream, read it through a buffer into the StringBuilder
         if (inputStream != null) {
-            InputStreamReader inputStreamReader = new InputStreamReader(inputStream, "UTF-8");
-            BufferedReader reader = new BufferedReader(inputStreamReader);
-
-            // Read lines from the buffer, and update the StringBuilder
-            String line = reader.readLine();
-            while (line != null) {
-                output.append(line);
-                line = reader.readLine();
+            InputStreamReader reader = new InputStreamReader(inputStream, "UTF-8");
+            try {
+                char[] buffer = new char[8192];
+                int count = reader.read(buffer);
+                while (count != -1) {
+                    output.append(buffer, 0, count);
+                    count = reader.read(buffer);
+                }
+            } finally {
+                // close resources
+                reader.close();
             }
-
-            // close resources
-            inputStreamReader.close();
-            reader.close();
         }
 
         return output.toString();
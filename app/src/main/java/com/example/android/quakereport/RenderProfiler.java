@@ -0,0 +1,249 @@
+package com.example.android.quakereport;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.util.Log;
+import android.view.Choreographer;
+import android.view.Display;
+import android.widget.AbsListView;
+
+/**
+ * Opt-in instrumentation of how smoothly the earthquake list renders. It records:
+ * <ul>
+ *     <li>the duration of every frame drawn while the list is scrolling, and how many of them
+ *     missed at least one vsync of the display (jank),</li>
+ *     <li>how long each {@link EarthquakeArrayAdapter#getView} call spent inflating a new row
+ *     and binding data to it.</li>
+ * </ul>
+ *
+ * Set it as the list's {@link AbsListView.OnScrollListener} and pass it to the adapter. The
+ * results can be read back as histograms, so automated scroll tests can assert on them, or
+ * logged with {@link #logSummary()}. Everything is expected to be called on the main thread.
+ */
+public class RenderProfiler implements AbsListView.OnScrollListener {
+
+    private static final String LOG_TAG = RenderProfiler.class.getName();
+
+    /** Time between vsyncs at 60 frames per second, in nanoseconds. */
+    public static final long DEFAULT_FRAME_PERIOD_NANOS = 16666667;
+
+    /**
+     * Frames up to this many vsync periods long are smooth. Leaves room for vsync jitter and
+     * displays running a little slower than they report, while still catching every frame
+     * that took two vsyncs.
+     */
+    static final double JANK_THRESHOLD_PERIODS = 1.5;
+
+    private static final long MILLI = 1000000;
+    private static final long MICRO = 1000;
+
+    private final long framePeriodNanos;
+
+    private final LatencyHistogram frameHistogram;
+    private final LatencyHistogram inflateHistogram = createCallHistogram();
+    private final LatencyHistogram bindHistogram = createCallHistogram();
+
+    /** Frames which took longer than {@link #JANK_THRESHOLD_PERIODS} vsync periods. */
+    private long jankFrames;
+
+    /** Frames which should have been drawn, but weren't because an earlier one ran long. */
+    private long droppedFrames;
+
+    /** Watches frames while scrolling, or null before Jelly Bean which has no Choreographer. */
+    private final FrameWatcher frameWatcher;
+
+    /**
+     * Constructs a new {@link RenderProfiler} for a display running at 60 frames per second.
+     */
+    public RenderProfiler() {
+        this(DEFAULT_FRAME_PERIOD_NANOS);
+    }
+
+    /**
+     * Constructs a new {@link RenderProfiler} for the display the list is drawn on.
+     */
+    public RenderProfiler(Display display) {
+        this(getFramePeriodNanos(display.getRefreshRate()));
+    }
+
+    /**
+     * Constructs a new {@link RenderProfiler}.
+     *
+     * @param framePeriodNanos is the time between vsyncs of the display, in nanoseconds.
+     */
+    public RenderProfiler(long framePeriodNanos) {
+        this.framePeriodNanos = framePeriodNanos;
+        frameHistogram = new LatencyHistogram(framePeriodNanos / 4, framePeriodNanos / 2,
+                framePeriodNanos * 3 / 4, framePeriodNanos, framePeriodNanos * 5 / 4,
+                framePeriodNanos * 3 / 2, 2 * framePeriodNanos, 3 * framePeriodNanos,
+                4 * framePeriodNanos, 6 * framePeriodNanos, 15 * framePeriodNanos,
+                30 * framePeriodNanos, 60 * framePeriodNanos);
+        frameWatcher = Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN
+                ? new FrameWatcher() : null;
+    }
+
+    /**
+     * Starts recording frames when the list starts scrolling, and stops when it comes to rest.
+     */
+    @Override
+    public void onScrollStateChanged(AbsListView view, int scrollState) {
+        if (frameWatcher == null) {
+            return;
+        }
+        if (scrollState == SCROLL_STATE_IDLE) {
+            frameWatcher.stop();
+        } else {
+            frameWatcher.start();
+        }
+    }
+
+    /**
+     * Stops recording frames until the list scrolls again, such as when the activity leaves the
+     * screen part way through a fling and the list never reports coming to rest.
+     */
+    public void stop() {
+        if (frameWatcher != null) {
+            frameWatcher.stop();
+        }
+    }
+
+    @Override
+    public void onScroll(AbsListView view, int firstVisibleItem, int visibleItemCount,
+                         int totalItemCount) {
+        // Nothing to do, as frames are timed by the FrameWatcher
+    }
+
+    /**
+     * Gets the time between vsyncs of a display, falling back to 60 frames per second if the
+     * display doesn't report a sensible refresh rate.
+     * @param refreshRate is the display's refresh rate, in frames per second.
+     */
+    static long getFramePeriodNanos(float refreshRate) {
+        if (!(refreshRate >= 1)) {
+            return DEFAULT_FRAME_PERIOD_NANOS;
+        }
+        return Math.round(1e9 / refreshRate);
+    }
+
+    /**
+     * Records the duration of a frame. Frame times are whole vsync periods apart, give or take
+     * some jitter, so the number of vsyncs a frame took is its duration rounded to the nearest
+     * period.
+     * @param nanos is the time since the previous frame started, in nanoseconds.
+     */
+    public void recordFrame(long nanos) {
+        frameHistogram.record(nanos);
+        if (nanos > framePeriodNanos * JANK_THRESHOLD_PERIODS) {
+            jankFrames++;
+            droppedFrames += Math.round((double) nanos / framePeriodNanos) - 1;
+        }
+    }
+
+    /**
+     * Records how long {@link EarthquakeArrayAdapter#getView} spent inflating a new row.
+     */
+    public void recordInflate(long nanos) {
+        inflateHistogram.record(nanos);
+    }
+
+    /**
+     * Records how long {@link EarthquakeArrayAdapter#getView} spent binding data to a row.
+     */
+    public void recordBind(long nanos) {
+        bindHistogram.record(nanos);
+    }
+
+    public LatencyHistogram getFrameHistogram() {
+        return frameHistogram;
+    }
+
+    public LatencyHistogram getInflateHistogram() {
+        return inflateHistogram;
+    }
+
+    public LatencyHistogram getBindHistogram() {
+        return bindHistogram;
+    }
+
+    /**
+     * Gets the number of frames which took more than one vsync period, allowing for jitter.
+     */
+    public long getJankFrameCount() {
+        return jankFrames;
+    }
+
+    /**
+     * Gets the number of vsyncs which were missed because of the frames that took too long.
+     */
+    public long getDroppedFrameCount() {
+        return droppedFrames;
+    }
+
+    /**
+     * Clears everything recorded so far.
+     */
+    public void reset() {
+        frameHistogram.reset();
+        inflateHistogram.reset();
+        bindHistogram.reset();
+        jankFrames = 0;
+        droppedFrames = 0;
+    }
+
+    /**
+     * Gets a short, human readable summary of everything recorded.
+     */
+    public String getSummary() {
+        return "frames: " + frameHistogram + " jank=" + jankFrames + " dropped=" + droppedFrames
+                + "\ngetView inflate: " + inflateHistogram
+                + "\ngetView bind: " + bindHistogram;
+    }
+
+    /**
+     * Writes the summary and the full frame histogram to the log.
+     */
+    public void logSummary() {
+        Log.i(LOG_TAG, getSummary());
+        Log.i(LOG_TAG, "frame histogram:\n" + frameHistogram.toCsv());
+    }
+
+    private static LatencyHistogram createCallHistogram() {
+        return new LatencyHistogram(50 * MICRO, 100 * MICRO, 250 * MICRO, 500 * MICRO,
+                1 * MILLI, 2 * MILLI, 4 * MILLI, 8 * MILLI, 16 * MILLI);
+    }
+
+    /**
+     * Measures the time between consecutive frames using the {@link Choreographer}, which calls
+     * back at the start of every frame.
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private class FrameWatcher implements Choreographer.FrameCallback {
+        private boolean running;
+        private long lastFrameTimeNanos;
+
+        void start() {
+            if (!running) {
+                running = true;
+                lastFrameTimeNanos = 0;
+                Choreographer.getInstance().postFrameCallback(this);
+            }
+        }
+
+        void stop() {
+            running = false;
+            Choreographer.getInstance().removeFrameCallback(this);
+        }
+
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            if (!running) {
+                return;
+            }
+            if (lastFrameTimeNanos != 0) {
+                recordFrame(frameTimeNanos - lastFrameTimeNanos);
+            }
+            lastFrameTimeNanos = frameTimeNanos;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+}
@@ -23,13 +23,22 @@ public class SettingsActivity extends AppCompatActivity {
             // Inflate the settings_main.xml which contains a PreferenceScreen root View.
             // This creates a list of Preferences which can be clicked and edited, with the
             // value inputted by the user then stored with an associated key.
-            // Currently, there is only one Preference for 'Minimum Magnitude.
+            // There are Preferences for 'Minimum Magnitude', 'Additional FDSN Feeds' and
+            // 'Alert Rules'.
             addPreferencesFromResource(R.xml.settings_main);
 
             // Find the minimum magnitude Preference
             Preference minMagnitude = findPreference(getString(R.string.settings_min_magnitude_key));
             // Update the summary of this Preference to the value
             bindPreferenceSummaryToValue(minMagnitude);
+
+            // Do the same for the additional sources Preference
+            Preference extraSources = findPreference(getString(R.string.settings_extra_sources_key));
+            bindPreferenceSummaryToValue(extraSources);
+
+            // And for the alert rules Preference
+            Preference alertRules = findPreference(getString(R.string.settings_alert_rules_key));
+            bindPreferenceSummaryToValue(alertRules);
         }
 
         /**
@@ -0,0 +1,69 @@
+package com.example.android.quakereport;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks how {@link AdaptiveRequestPolicy} judges the link from the estimator's measurements.
+ */
+public class AdaptiveRequestPolicyTest {
+
+    private final LinkQualityEstimator estimator = new LinkQualityEstimator();
+    private final AdaptiveRequestPolicy policy = new AdaptiveRequestPolicy(estimator);
+
+    @Test
+    public void fastLinkIsGood() {
+        estimator.recordFetch(100, 1024 * 1024, 1000);
+
+        assertEquals(AdaptiveRequestPolicy.LinkQuality.GOOD, policy.assessLink(null));
+        assertEquals(200, policy.createPlan(null).getLimit());
+    }
+
+    @Test
+    public void slowLinkIsPoor() {
+        estimator.recordFetch(1500, 16 * 1024, 2000);
+
+        AdaptiveRequestPolicy.RequestPlan plan = policy.createPlan(null);
+
+        assertEquals(AdaptiveRequestPolicy.LinkQuality.POOR, plan.getLinkQuality());
+        assertEquals(AdaptiveRequestPolicy.Format.TEXT, plan.getFormat());
+    }
+
+    @Test
+    public void oneFailureDoesNotMakeTheLinkPoor() {
+        estimator.recordFetch(100, 1024 * 1024, 1000);
+        estimator.recordFailure();
+
+        assertEquals(AdaptiveRequestPolicy.LinkQuality.GOOD, policy.assessLink(null));
+    }
+
+    @Test
+    public void repeatedFailuresMakeTheLinkPoor() {
+        estimator.recordFetch(100, 1024 * 1024, 1000);
+        for (int i = 0; i < AdaptiveRequestPolicy.POOR_CONSECUTIVE_FAILURES; i++) {
+            estimator.recordFailure();
+        }
+
+        assertEquals(AdaptiveRequestPolicy.LinkQuality.POOR, policy.assessLink(null));
+
+        // A fetch that completes clears the failures
+        estimator.recordFetch(100, 1024 * 1024, 1000);
+        assertEquals(AdaptiveRequestPolicy.LinkQuality.GOOD, policy.assessLink(null));
+    }
+
+    @Test
+    public void serversHaveTheirOwnEstimates() {
+        LinkQualityEstimator primary = LinkQualityEstimator.getInstance("primary.example.com");
+        LinkQualityEstimator secondary =
+                LinkQualityEstimator.getInstance("secondary.example.com:8080");
+
+        for (int i = 0; i < 5; i++) {
+            secondary.recordFailure();
+        }
+
+        assertEquals(primary, LinkQualityEstimator.getInstance("primary.example.com"));
+        assertEquals(0, primary.getConsecutiveFailures());
+        assertEquals(5, secondary.getConsecutiveFailures());
+    }
+}
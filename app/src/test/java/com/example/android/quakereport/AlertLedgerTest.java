@@ -0,0 +1,265 @@
+package com.example.android.quakereport;
+
+import android.content.SharedPreferences;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that {@link AlertLedger} and {@link AlertNotifier#findNewAlerts} only alert about each
+ * earthquake once.
+ */
+public class AlertLedgerTest {
+
+    private final MemoryPreferences preferences = new MemoryPreferences();
+
+    @Test
+    public void alertsAboutEachEarthquakeOnce() {
+        AlertLedger ledger = new AlertLedger(preferences);
+        Earthquake earthquake = quake(0, 5);
+
+        assertTrue(ledger.markSent(earthquake));
+        assertFalse(ledger.markSent(earthquake));
+        // A revision of the same event
+        assertFalse(ledger.markSent(new Earthquake(earthquake.getId(), 2000, "Revised", 5.5, 0,
+                earthquake.getUrl(), 0, 0)));
+    }
+
+    @Test
+    public void remembersAlertsAcrossRestarts() {
+        AlertLedger ledger = new AlertLedger(preferences);
+        ledger.markSent(quake(0, 5));
+        ledger.save();
+
+        AlertLedger restarted = new AlertLedger(preferences);
+
+        assertFalse(restarted.markSent(quake(0, 5)));
+        assertTrue(restarted.markSent(quake(1, 5)));
+    }
+
+    @Test
+    public void readsAlertsStoredForEachRule() {
+        Earthquake byId = quake(0, 5);
+        Earthquake byUrl = quake(1, 5);
+        preferences.strings.put("sent_alerts", "4.5|" + byId.getId() + "\n"
+                + "5.0@1.0,2.0,300.0|" + byId.getId() + "\n6.0|" + byUrl.getUrl() + "\n");
+
+        AlertLedger ledger = new AlertLedger(preferences);
+
+        assertFalse(ledger.markSent(byId));
+        assertFalse(ledger.markSent(byUrl));
+        assertTrue(ledger.markSent(quake(2, 5)));
+    }
+
+    @Test
+    public void forgetsTheEarthquakesMatchedLongestAgo() {
+        AlertLedger ledger = new AlertLedger(preferences);
+        ledger.beginBatch();
+        for (int i = 0; i < AlertLedger.MAX_ENTRIES; i++) {
+            ledger.markSent(quake(i, 5));
+        }
+        // The first earthquake is still in the feed, so it's matched again
+        ledger.beginBatch();
+        ledger.markSent(quake(0, 5));
+        ledger.markSent(quake(AlertLedger.MAX_ENTRIES, 5));
+        ledger.save();
+
+        assertFalse(ledger.markSent(quake(0, 5)));
+        assertTrue(ledger.markSent(quake(1, 5)));
+    }
+
+    @Test
+    public void doesNotAlertAgainWhenOneLoadMatchesManyRules() {
+        // Every earthquake matches every rule, so one load has 40,000 matches
+        List<AlertRule> rules = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            rules.add(new AlertRule(i / 10.0));
+        }
+        AlertRuleEngine engine = new AlertRuleEngine(rules);
+        List<Earthquake> earthquakes = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            earthquakes.add(quake(i, 5));
+        }
+        AlertLedger ledger = new AlertLedger(preferences);
+
+        Map<Earthquake, AlertRule> first =
+                AlertNotifier.findNewAlerts(engine, ledger, earthquakes);
+        ledger.save();
+        Map<Earthquake, AlertRule> refresh =
+                AlertNotifier.findNewAlerts(engine, ledger, earthquakes);
+        Map<Earthquake, AlertRule> afterRestart = AlertNotifier.findNewAlerts(engine,
+                new AlertLedger(preferences), earthquakes);
+
+        assertEquals(earthquakes, new ArrayList<>(first.keySet()));
+        assertEquals(rules.get(0), first.get(earthquakes.get(0)));
+        assertEquals(0, refresh.size());
+        assertEquals(0, afterRestart.size());
+    }
+
+    @Test
+    public void alertsOnlyAboutEarthquakesNewToTheFeed() {
+        List<AlertRule> rules = Arrays.asList(new AlertRule(4), new AlertRule(5));
+        AlertRuleEngine engine = new AlertRuleEngine(rules);
+        List<Earthquake> earthquakes = new ArrayList<>();
+        for (int i = 0; i < 1500; i++) {
+            earthquakes.add(quake(i, 6));
+        }
+        AlertLedger ledger = new AlertLedger(preferences);
+        AlertNotifier.findNewAlerts(engine, ledger, earthquakes);
+        ledger.save();
+
+        // The oldest earthquake drops out and a new one arrives
+        earthquakes.remove(earthquakes.size() - 1);
+        Earthquake newest = quake(1500, 6);
+        earthquakes.add(0, newest);
+        Map<Earthquake, AlertRule> refresh =
+                AlertNotifier.findNewAlerts(engine, ledger, earthquakes);
+
+        assertEquals(1, refresh.size());
+        assertEquals(rules.get(0), refresh.get(newest));
+    }
+
+    private static Earthquake quake(int index, double magnitude) {
+        String id = "us" + index;
+        return new Earthquake(id, 1000, "Place " + index, magnitude, 1476000000000L - index,
+                "http://example.com/" + id, 0, 0);
+    }
+
+    /**
+     * Holds string preferences in memory, and ignores every other kind.
+     */
+    private static class MemoryPreferences implements SharedPreferences {
+
+        final Map<String, String> strings = new HashMap<>();
+
+        @Override
+        public String getString(String key, String defValue) {
+            return strings.containsKey(key) ? strings.get(key) : defValue;
+        }
+
+        @Override
+        public Editor edit() {
+            return new MemoryEditor();
+        }
+
+        @Override
+        public Map<String, ?> getAll() {
+            return strings;
+        }
+
+        @Override
+        public Set<String> getStringSet(String key, Set<String> defValues) {
+            return defValues;
+        }
+
+        @Override
+        public int getInt(String key, int defValue) {
+            return defValue;
+        }
+
+        @Override
+        public long getLong(String key, long defValue) {
+            return defValue;
+        }
+
+        @Override
+        public float getFloat(String key, float defValue) {
+            return defValue;
+        }
+
+        @Override
+        public boolean getBoolean(String key, boolean defValue) {
+            return defValue;
+        }
+
+        @Override
+        public boolean contains(String key) {
+            return strings.containsKey(key);
+        }
+
+        @Override
+        public void registerOnSharedPreferenceChangeListener(
+                OnSharedPreferenceChangeListener listener) {
+        }
+
+        @Override
+        public void unregisterOnSharedPreferenceChangeListener(
+                OnSharedPreferenceChangeListener listener) {
+        }
+
+        private class MemoryEditor implements Editor {
+
+            private final Map<String, String> changes = new HashMap<>();
+
+            @Override
+            public Editor putString(String key, String value) {
+                changes.put(key, value);
+                return this;
+            }
+
+            @Override
+            public Editor putStringSet(String key, Set<String> values) {
+                return this;
+            }
+
+            @Override
+            public Editor putInt(String key, int value) {
+                return this;
+            }
+
+            @Override
+            public Editor putLong(String key, long value) {
+                return this;
+            }
+
+            @Override
+            public Editor putFloat(String key, float value) {
+                return this;
+            }
+
+            @Override
+            public Editor putBoolean(String key, boolean value) {
+                return this;
+            }
+
+            @Override
+            public Editor remove(String key) {
+                changes.put(key, null);
+                return this;
+            }
+
+            @Override
+            public Editor clear() {
+                strings.clear();
+                return this;
+            }
+
+            @Override
+            public boolean commit() {
+                apply();
+                return true;
+            }
+
+            @Override
+            public void apply() {
+                for (Map.Entry<String, String> change : changes.entrySet()) {
+                    if (change.getValue() == null) {
+                        strings.remove(change.getKey());
+                    } else {
+                        strings.put(change.getKey(), change.getValue());
+                    }
+                }
+            }
+        }
+    }
+}
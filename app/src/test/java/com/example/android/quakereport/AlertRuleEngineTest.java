@@ -0,0 +1,204 @@
+package com.example.android.quakereport;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that {@link AlertRuleEngine} finds exactly the rules that {@link AlertRule#matches}
+ * says an earthquake matches.
+ */
+public class AlertRuleEngineTest {
+
+    @Test
+    public void matchesRulesCentredNextToTheAntimeridian() {
+        List<AlertRule> rules = Arrays.asList(
+                new AlertRule(4, 10, 179.9, 300),
+                new AlertRule(4, -20, -179.9, 300),
+                new AlertRule(4, 0, 180, 50),
+                new AlertRule(4, 0, -180, 50));
+
+        // Just across the antimeridian from each rule
+        assertMatches(rules, quake(10, -179.5), rules.get(0));
+        assertMatches(rules, quake(-20, 179.5), rules.get(1));
+        assertMatches(rules, quake(0, 179.9), rules.get(2), rules.get(3));
+        assertMatches(rules, quake(0, -179.9), rules.get(2), rules.get(3));
+
+        assertSameAsMatches(rules, grid(1));
+    }
+
+    @Test
+    public void matchesRulesWhoseRegionReachesAPole() {
+        List<AlertRule> rules = Arrays.asList(
+                new AlertRule(4, 85, 30, 800),
+                new AlertRule(4, -88, -100, 300),
+                new AlertRule(4, 80, 0, 1112));
+
+        // On the far side of the pole from the rule's center, and exactly on the pole for the
+        // rule that only just reaches it
+        assertMatches(rules, quake(88, -150), rules.get(0));
+        assertMatches(rules, quake(-89.5, 80), rules.get(1));
+        assertMatches(rules, quake(90, 0), rules.get(0), rules.get(2));
+
+        assertSameAsMatches(rules, grid(1));
+    }
+
+    @Test
+    public void matchesRulesWhoseThresholdEqualsTheMagnitude() {
+        AlertRule worldwide = new AlertRule(5.0);
+        AlertRule regional = new AlertRule(5.0, 35.68, 139.69, 300);
+        AlertRule bigger = new AlertRule(5.1);
+        List<AlertRule> rules = Arrays.asList(worldwide, regional, bigger);
+
+        assertMatches(rules, quake(5.0, 35.68, 139.69), worldwide, regional);
+        assertMatches(rules, quake(4.9999, 35.68, 139.69));
+    }
+
+    @Test
+    public void matchesNothingForAnUnknownMagnitude() {
+        List<AlertRule> rules = Arrays.asList(
+                new AlertRule(0),
+                new AlertRule(Double.NEGATIVE_INFINITY),
+                new AlertRule(0, 35.68, 139.69, 300));
+
+        assertMatches(rules, quake(Double.NaN, 35.68, 139.69));
+    }
+
+    @Test
+    public void matchesOnlyWorldwideRulesWithoutCoordinates() {
+        AlertRule worldwide = new AlertRule(3);
+        List<AlertRule> rules = Arrays.asList(worldwide, new AlertRule(3, 0, 0, 20000));
+
+        assertMatches(rules, quake(4, Double.NaN, Double.NaN), worldwide);
+    }
+
+    @Test
+    public void matchesTheSameAsEveryRuleForRandomRules() {
+        Random random = new Random(42);
+        List<AlertRule> rules = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            double magnitude = Math.round(random.nextDouble() * 80) / 10.0;
+            if (i % 10 == 0) {
+                rules.add(new AlertRule(magnitude));
+            } else {
+                // Mostly small regions, with some spanning whole continents
+                double radius = i % 7 == 0 ? random.nextDouble() * 8000
+                        : random.nextDouble() * 1000;
+                rules.add(new AlertRule(magnitude, random.nextDouble() * 180 - 90,
+                        random.nextDouble() * 360 - 180, radius));
+            }
+        }
+        List<Earthquake> earthquakes = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            earthquakes.add(quake(Math.round(random.nextDouble() * 90) / 10.0,
+                    random.nextDouble() * 180 - 90, random.nextDouble() * 360 - 180));
+        }
+
+        assertSameAsMatches(rules, earthquakes);
+    }
+
+    @Test
+    public void evaluatesOneMatchPerRuleAndEarthquake() {
+        AlertRule any = new AlertRule(1);
+        AlertRule big = new AlertRule(6);
+        Earthquake small = quake(2, 0, 0);
+        Earthquake large = quake(7, 0, 0);
+
+        List<AlertRuleEngine.Match> matches = new AlertRuleEngine(Arrays.asList(any, big))
+                .evaluate(Arrays.asList(small, large));
+
+        assertEquals(3, matches.size());
+        assertEquals(small, matches.get(0).getEarthquake());
+        assertEquals(any, matches.get(0).getRule());
+    }
+
+    /**
+     * Asserts that the engine finds exactly the given rules for the earthquake, and that these
+     * are the rules which {@link AlertRule#matches} accepts.
+     */
+    private static void assertMatches(List<AlertRule> rules, Earthquake earthquake,
+                                      AlertRule... expected) {
+        List<AlertRule> expectedRules = Arrays.asList(expected);
+        assertEquals(earthquake.toString(), indices(rules, expectedRules),
+                indices(rules, naiveMatches(rules, earthquake)));
+        assertEquals(earthquake.toString(), indices(rules, expectedRules),
+                indices(rules, engineMatches(new AlertRuleEngine(rules), earthquake)));
+    }
+
+    /**
+     * Asserts that the engine finds the same rules as {@link AlertRule#matches} for every
+     * earthquake.
+     */
+    private static void assertSameAsMatches(List<AlertRule> rules, List<Earthquake> earthquakes) {
+        AlertRuleEngine engine = new AlertRuleEngine(rules);
+        int total = 0;
+        for (Earthquake earthquake : earthquakes) {
+            List<AlertRule> expected = naiveMatches(rules, earthquake);
+            total += expected.size();
+            assertEquals(earthquake + " at " + earthquake.getLatitude() + ","
+                    + earthquake.getLongitude(), indices(rules, expected),
+                    indices(rules, engineMatches(engine, earthquake)));
+        }
+        assertTrue("no earthquake matched anything", total > 0);
+    }
+
+    private static List<AlertRule> naiveMatches(List<AlertRule> rules, Earthquake earthquake) {
+        List<AlertRule> matches = new ArrayList<>();
+        for (AlertRule rule : rules) {
+            if (rule.matches(earthquake)) {
+                matches.add(rule);
+            }
+        }
+        return matches;
+    }
+
+    private static List<AlertRule> engineMatches(AlertRuleEngine engine, Earthquake earthquake) {
+        List<AlertRule> matches = new ArrayList<>();
+        engine.findMatchingRules(earthquake, matches);
+        return matches;
+    }
+
+    /**
+     * Gets the sorted positions of the matched rules in the list of all rules, so lists of
+     * matches can be compared whatever their order.
+     */
+    private static List<Integer> indices(List<AlertRule> rules, List<AlertRule> matches) {
+        List<Integer> indices = new ArrayList<>();
+        for (AlertRule match : matches) {
+            indices.add(rules.indexOf(match));
+        }
+        Collections.sort(indices);
+        return indices;
+    }
+
+    /**
+     * Creates M5 earthquakes at every point of a grid covering the whole world, including the
+     * poles and both sides of the antimeridian.
+     */
+    private static List<Earthquake> grid(double stepDegrees) {
+        List<Earthquake> earthquakes = new ArrayList<>();
+        for (double latitude = -90; latitude <= 90; latitude += stepDegrees) {
+            for (double longitude = -180; longitude <= 180; longitude += stepDegrees) {
+                earthquakes.add(quake(latitude, longitude));
+            }
+        }
+        return earthquakes;
+    }
+
+    private static Earthquake quake(double latitude, double longitude) {
+        return quake(5, latitude, longitude);
+    }
+
+    private static Earthquake quake(double magnitude, double latitude, double longitude) {
+        String id = "q" + magnitude + "@" + latitude + "," + longitude;
+        return new Earthquake(id, 1000, "Place", magnitude, 0, "http://example.com/" + id,
+                latitude, longitude);
+    }
+}
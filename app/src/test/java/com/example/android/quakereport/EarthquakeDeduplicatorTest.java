@@ -0,0 +1,153 @@
+package com.example.android.quakereport;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks which earthquakes {@link EarthquakeDeduplicator} treats as the same quake.
+ */
+public class EarthquakeDeduplicatorTest {
+
+    private static final long TIME = 1476000000000L;
+
+    private final EarthquakeDeduplicator deduplicator = new EarthquakeDeduplicator();
+
+    @Test
+    public void mergesJustInsideTheTimeTolerance() {
+        Earthquake first = quake("a", TIME, 10, 20);
+        Earthquake second = quake("b", TIME + EarthquakeDeduplicator.DEFAULT_TIME_TOLERANCE_MILLIS,
+                10, 20);
+
+        assertEquals(Collections.singletonList(first), merge(list(first), list(second)));
+    }
+
+    @Test
+    public void keepsBothJustOutsideTheTimeTolerance() {
+        Earthquake first = quake("a", TIME, 10, 20);
+        Earthquake second = quake("b",
+                TIME + EarthquakeDeduplicator.DEFAULT_TIME_TOLERANCE_MILLIS + 1, 10, 20);
+
+        assertEquals(Arrays.asList(second, first), merge(list(first), list(second)));
+    }
+
+    @Test
+    public void mergesJustInsideTheDistanceTolerance() {
+        double degrees = (EarthquakeDeduplicator.DEFAULT_DISTANCE_TOLERANCE_KM - 0.1)
+                / GeoUtils.KM_PER_DEGREE;
+        Earthquake first = quake("a", TIME, 10, 20);
+        Earthquake second = quake("b", TIME + 1000, 10 + degrees, 20);
+
+        assertEquals(Collections.singletonList(first), merge(list(first), list(second)));
+    }
+
+    @Test
+    public void keepsBothJustOutsideTheDistanceTolerance() {
+        double degrees = (EarthquakeDeduplicator.DEFAULT_DISTANCE_TOLERANCE_KM + 0.1)
+                / GeoUtils.KM_PER_DEGREE;
+        Earthquake first = quake("a", TIME, 10, 20);
+        Earthquake second = quake("b", TIME + 1000, 10 + degrees, 20);
+
+        assertEquals(Arrays.asList(second, first), merge(list(first), list(second)));
+    }
+
+    @Test
+    public void keepsCloseEarthquakesFromTheSameSource() {
+        Earthquake mainshock = quake("a", TIME, 10, 20);
+        Earthquake aftershock = quake("b", TIME + 2000, 10.01, 20.01);
+
+        assertEquals(Arrays.asList(aftershock, mainshock),
+                merge(list(mainshock, aftershock), list()));
+    }
+
+    @Test
+    public void keepsCloseEarthquakesFromTheSameSourceWhenAnotherSourceReportsOne() {
+        Earthquake mainshock = quake("a", TIME, 10, 20);
+        Earthquake aftershock = quake("b", TIME + 2000, 10.5, 20);
+        Earthquake report = quake("c", TIME + 1000, 10.4, 20);
+
+        // The other agency's report is absorbed by one of them, and can't join the two together
+        assertEquals(Arrays.asList(aftershock, mainshock),
+                merge(list(mainshock, aftershock), list(report)));
+    }
+
+    @Test
+    public void neverMergesEarthquakesWithoutCoordinates() {
+        Earthquake located = quake("a", TIME, 10, 20);
+        Earthquake unlocated = quake("b", TIME, Double.NaN, Double.NaN);
+        Earthquake alsoUnlocated = quake("c", TIME, Double.NaN, Double.NaN);
+
+        List<Earthquake> merged = merge(list(located, unlocated), list(alsoUnlocated));
+
+        assertEquals(3, merged.size());
+        assertEquals(3, merge(list(unlocated), list(located), list(alsoUnlocated)).size());
+    }
+
+    @Test
+    public void keepsThePreferredSourceWhenALaterSourceReportsFirst() {
+        Earthquake preferred = quake("preferred", TIME + 5000, 10, 20);
+        Earthquake other = quake("other", TIME, 10.1, 20);
+        Earthquake third = quake("third", TIME + 1000, 10.05, 20);
+
+        List<Earthquake> merged = merge(list(preferred), list(other), list(third));
+
+        assertEquals(1, merged.size());
+        assertSame(preferred, merged.get(0));
+    }
+
+    @Test
+    public void mergesAcrossTheAntimeridian() {
+        Earthquake east = quake("east", TIME, 0, 179.9);
+        Earthquake west = quake("west", TIME + 1000, 0, -179.9);
+
+        assertEquals(Collections.singletonList(east), merge(list(east), list(west)));
+    }
+
+    @Test
+    public void keepsDistinctQuakesFromEverySource() {
+        // The second source reports the same quakes a little later and further north, and the
+        // third reports different quakes in between them
+        List<Earthquake> primary = new ArrayList<>();
+        List<Earthquake> duplicate = new ArrayList<>();
+        List<Earthquake> distinct = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            long time = TIME + i * 60000L;
+            double longitude = (i * 37 % 360) - 180;
+            primary.add(quake("p" + i, time, 10, longitude));
+            duplicate.add(quake("d" + i, time + 4000, 10.2, longitude + 0.2));
+            distinct.add(quake("o" + i, time + 30000, -10, longitude));
+        }
+
+        List<Earthquake> merged = merge(primary, duplicate, distinct);
+
+        assertEquals(1000, merged.size());
+        for (int i = 0; i < merged.size(); i++) {
+            assertEquals(i % 2 == 0 ? "o" : "p", merged.get(i).getId().substring(0, 1));
+            if (i > 0) {
+                assertTrue(merged.get(i - 1).getTimeInMilliseconds()
+                        > merged.get(i).getTimeInMilliseconds());
+            }
+        }
+    }
+
+    @SafeVarargs
+    private final List<Earthquake> merge(List<Earthquake>... earthquakesBySource) {
+        return deduplicator.merge(Arrays.asList(earthquakesBySource));
+    }
+
+    private static List<Earthquake> list(Earthquake... earthquakes) {
+        return Arrays.asList(earthquakes);
+    }
+
+    private static Earthquake quake(String id, long time, double latitude, double longitude) {
+        return new Earthquake(id, time, "Place " + id, 4.0, time,
+                "http://example.com/" + id, latitude, longitude);
+    }
+}
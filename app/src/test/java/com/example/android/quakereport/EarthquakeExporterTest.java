@@ -0,0 +1,216 @@
+package com.example.android.quakereport;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the files written by {@link EarthquakeExporter}.
+ */
+public class EarthquakeExporterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void csvQuotesFieldsWithCommasQuotesAndLineBreaks() throws IOException {
+        Earthquake earthquake = new Earthquake("us1", 1000, "5km N of \"Quake\", Town\nRegion",
+                4.5, 0, "http://example.com/a,b", 12.5, -45.25);
+
+        String csv = export(EarthquakeExporter.Format.CSV, Collections.singletonList(earthquake));
+
+        assertEquals("id,time,latitude,longitude,magnitude,place,url\n"
+                + "us1,1970-01-01T00:00:00.000Z,12.5,-45.25,4.5,"
+                + "\"5km N of \"\"Quake\"\", Town\nRegion\",\"http://example.com/a,b\"\n", csv);
+    }
+
+    @Test
+    public void csvLeavesPlainFieldsUnquoted() throws IOException {
+        Earthquake earthquake = new Earthquake("us1", 1000, "10km S of Town", 2.0,
+                1476000000123L, "http://example.com/us1", 1, 2);
+
+        String csv = export(EarthquakeExporter.Format.CSV, Collections.singletonList(earthquake));
+
+        assertEquals("id,time,latitude,longitude,magnitude,place,url\n"
+                + "us1,2016-10-09T08:00:00.123Z,1.0,2.0,2.0,10km S of Town,"
+                + "http://example.com/us1\n", csv);
+    }
+
+    @Test
+    public void csvKeepsColumnsWhenCoordinatesAreMissing() throws IOException {
+        Earthquake earthquake = new Earthquake("us1", 1000, "Somewhere", 3.1, -1,
+                "http://example.com/us1", Double.NaN, Double.NaN);
+
+        String csv = export(EarthquakeExporter.Format.CSV, Collections.singletonList(earthquake));
+
+        String[] lines = csv.split("\n");
+        assertEquals(2, lines.length);
+        assertEquals("us1,1969-12-31T23:59:59.999Z,,,3.1,Somewhere,http://example.com/us1",
+                lines[1]);
+        assertEquals(lines[0].split(",", -1).length, lines[1].split(",", -1).length);
+    }
+
+    @Test
+    public void csvLeavesAnUnknownMagnitudeEmpty() throws IOException {
+        Earthquake earthquake = new Earthquake("us1", 1000, "Somewhere", Double.NaN, 0,
+                "http://example.com/us1", 1, 2);
+
+        String csv = export(EarthquakeExporter.Format.CSV, Collections.singletonList(earthquake));
+
+        assertEquals("us1,1970-01-01T00:00:00.000Z,1.0,2.0,,Somewhere,http://example.com/us1",
+                csv.split("\n")[1]);
+    }
+
+    @Test
+    public void csvQuotesAnIdWithAComma() throws IOException {
+        Earthquake earthquake = new Earthquake("us,1", 1000, "Somewhere", 1.0, 0,
+                "http://example.com/us1", 1, 2);
+
+        String csv = export(EarthquakeExporter.Format.CSV, Collections.singletonList(earthquake));
+
+        assertTrue(csv.split("\n")[1].startsWith("\"us,1\",1970-01-01T"));
+    }
+
+    @Test
+    public void geoJsonEscapesControlCharacters() throws Exception {
+        String place = "Tab\there \"quoted\" back\\slash\nline\u0001\u001f end";
+        Earthquake earthquake = new Earthquake("us\u00021", 1476000000500L, place, 6.2,
+                1476000000000L, "http://example.com/us1", -33.5, 151.25);
+
+        String json = export(EarthquakeExporter.Format.GEOJSON,
+                Collections.singletonList(earthquake));
+
+        for (int i = 0; i < json.length(); i++) {
+            char c = json.charAt(i);
+            assertTrue("raw control character " + (int) c, c >= 0x20 || c == '\n');
+        }
+        assertTrue(json.contains("\\u0001") && json.contains("\\u001f"));
+
+        JSONArray features = new JSONObject(json).getJSONArray("features");
+        assertEquals(1, features.length());
+        JSONObject feature = features.getJSONObject(0);
+        JSONObject properties = feature.getJSONObject("properties");
+        assertEquals(place, properties.getString("place"));
+        assertEquals(6.2, properties.getDouble("mag"), 0);
+        assertEquals(1476000000000L, properties.getLong("time"));
+        assertEquals(1476000000500L, properties.getLong("updated"));
+        assertEquals("us\u00021", feature.getString("id"));
+        JSONArray coordinates = feature.getJSONObject("geometry").getJSONArray("coordinates");
+        assertEquals(151.25, coordinates.getDouble(0), 0);
+        assertEquals(-33.5, coordinates.getDouble(1), 0);
+    }
+
+    @Test
+    public void geoJsonWritesAnUnknownMagnitudeAsNull() throws Exception {
+        Earthquake earthquake = new Earthquake("us1", 1000, "Somewhere", Double.NaN, 0,
+                "http://example.com/us1", 1, 2);
+
+        String json = export(EarthquakeExporter.Format.GEOJSON,
+                Collections.singletonList(earthquake));
+
+        assertFalse(json.contains("NaN"));
+        JSONObject properties = new JSONObject(json).getJSONArray("features")
+                .getJSONObject(0).getJSONObject("properties");
+        assertTrue(properties.isNull("mag"));
+        assertEquals(Collections.singletonList(earthquake),
+                QueryUtils.extractFeatureFromJsonSequentially(json, null));
+    }
+
+    @Test
+    public void geoJsonRoundTripsThroughTheParser() throws IOException {
+        List<Earthquake> earthquakes = Arrays.asList(
+                new Earthquake("us1", 1476000000500L, "A, \"B\"", 1.5, 1476000000000L,
+                        "http://example.com/us1", 10, 20),
+                new Earthquake("us2", 1476000001500L, "No coordinates", 2.5, 1476000001000L,
+                        "http://example.com/us2", Double.NaN, Double.NaN));
+
+        String json = export(EarthquakeExporter.Format.GEOJSON, earthquakes);
+
+        assertEquals(earthquakes, QueryUtils.extractFeatureFromJsonSequentially(json, null));
+    }
+
+    @Test
+    public void cancelledExportLeavesNoFiles() throws IOException {
+        List<Earthquake> earthquakes = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            earthquakes.add(new Earthquake("us" + i, 1000 + i, "Place " + i, 1.0, i,
+                    "http://example.com/us" + i, 0, 0));
+        }
+        File file = new File(folder.getRoot(), "earthquakes.csv");
+
+        final int[] checks = new int[1];
+        boolean finished = new EarthquakeExporter(EarthquakeExporter.Format.CSV)
+                .export(earthquakes, file, new EarthquakeExporter.ProgressListener() {
+                    @Override
+                    public void onProgress(int written, int total) {
+                    }
+
+                    @Override
+                    public boolean isCancelled() {
+                        // Cancel part way through, once something has been written
+                        return ++checks[0] > 2;
+                    }
+                });
+
+        assertFalse(finished);
+        assertFalse(file.exists());
+        assertFalse(new File(file.getPath() + ".part").exists());
+        assertEquals(0, folder.getRoot().list().length);
+    }
+
+    @Test
+    public void finishedExportReplacesTheFileAndRemovesThePartFile() throws IOException {
+        File file = folder.newFile("earthquakes.csv");
+        Earthquake earthquake = new Earthquake("us1", 1000, "Place", 1.0, 0,
+                "http://example.com/us1", 0, 0);
+
+        assertTrue(new EarthquakeExporter(EarthquakeExporter.Format.CSV)
+                .export(Collections.singletonList(earthquake), file, null));
+
+        assertTrue(read(file).startsWith("id,time,"));
+        assertEquals(Collections.singletonList("earthquakes.csv"),
+                Arrays.asList(folder.getRoot().list()));
+    }
+
+    /**
+     * Exports the earthquakes to a file and returns what was written.
+     */
+    private String export(EarthquakeExporter.Format format, List<Earthquake> earthquakes)
+            throws IOException {
+        File file = new File(folder.getRoot(), "export." + format.getExtension());
+        assertTrue(new EarthquakeExporter(format).export(earthquakes, file, null));
+        return read(file);
+    }
+
+    private static String read(File file) throws IOException {
+        Reader reader = new InputStreamReader(new FileInputStream(file), Charset.forName("UTF-8"));
+        try {
+            StringBuilder output = new StringBuilder();
+            char[] buffer = new char[4096];
+            int count;
+            while ((count = reader.read(buffer)) != -1) {
+                output.append(buffer, 0, count);
+            }
+            return output.toString();
+        } finally {
+            reader.close();
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package com.example.android.quakereport;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Checks that {@link EarthquakeRegistry} hands back the same instance for an unchanged event,
+ * and a new one for a revised event.
+ */
+public class EarthquakeRegistryTest {
+
+    private static final String EVENT_PAGE_URL = "http://example.com/eventpage/";
+
+    private final EarthquakeRegistry registry = new EarthquakeRegistry();
+
+    @Test
+    public void findsOnlyTheRegisteredRevision() {
+        Earthquake earthquake = quake("us1", 1000);
+        registry.register(earthquake);
+
+        assertSame(earthquake, registry.find("us1", 1000));
+        assertNull(registry.find("us1", 2000));
+        assertNull(registry.find("us2", 1000));
+        assertNull(registry.find(null, 1000));
+    }
+
+    @Test
+    public void findsNothingWithoutAnUpdatedTime() {
+        registry.register(quake("us1", Earthquake.UNKNOWN_UPDATED));
+
+        assertNull(registry.find("us1", Earthquake.UNKNOWN_UPDATED));
+    }
+
+    @Test
+    public void registerReturnsTheRegisteredInstanceOfAnEqualEarthquake() {
+        Earthquake first = quake("us1", 1000);
+        Earthquake equal = quake("us1", 1000);
+
+        assertSame(first, registry.register(first));
+        assertSame(first, registry.register(equal));
+        assertEquals(1, registry.size());
+    }
+
+    @Test
+    public void registerReplacesARevisedEarthquake() {
+        Earthquake first = quake("us1", 1000);
+        Earthquake revised = quake("us1", 2000);
+        registry.register(first);
+
+        assertSame(revised, registry.register(revised));
+        assertSame(revised, registry.find("us1", 2000));
+        assertNull(registry.find("us1", 1000));
+        assertEquals(1, registry.size());
+    }
+
+    @Test
+    public void endLoadForgetsEventsThatWerentSeen() {
+        registry.beginLoad();
+        registry.register(quake("found", 1000));
+        registry.register(quake("registered", 1000));
+        registry.register(quake("gone", 1000));
+        assertEquals(0, registry.endLoad());
+
+        registry.beginLoad();
+        registry.find("found", 1000);
+        registry.register(quake("registered", 1000));
+        // Looking for a different revision doesn't count as seeing the event
+        registry.find("gone", 2000);
+
+        assertEquals(1, registry.endLoad());
+        assertEquals(2, registry.size());
+        assertNull(registry.find("gone", 1000));
+    }
+
+    @Test
+    public void clearForgetsEverything() {
+        registry.register(quake("us1", 1000));
+        registry.register(quake("us2", 1000));
+
+        registry.clear();
+
+        assertEquals(0, registry.size());
+        assertNull(registry.find("us1", 1000));
+    }
+
+    @Test
+    public void reusesEveryEarthquakeOfAnUnchangedResponse() {
+        String json = featureCollection(2000, 0);
+        List<Earthquake> first = load(json);
+
+        List<Earthquake> second = load(json);
+
+        assertEquals(first, second);
+        for (int i = 0; i < first.size(); i++) {
+            assertSame(first.get(i), second.get(i));
+        }
+        assertEquals(2000, registry.size());
+    }
+
+    @Test
+    public void buildsNewEarthquakesOnlyForRevisedEvents() {
+        List<Earthquake> first = load(featureCollection(2000, 0));
+
+        // Every tenth event has been revised since
+        List<Earthquake> second = load(featureCollection(2000, 10));
+
+        assertEquals(first.size(), second.size());
+        int reused = 0;
+        for (int i = 0; i < first.size(); i++) {
+            if (i % 10 == 0) {
+                assertNotSame(first.get(i), second.get(i));
+                assertEquals(first.get(i).getUpdated() + 1, second.get(i).getUpdated());
+            } else {
+                assertSame(first.get(i), second.get(i));
+                reused++;
+            }
+        }
+        assertEquals(1800, reused);
+        assertEquals(2000, registry.size());
+    }
+
+    @Test
+    public void forgetsEventsThatDropOutOfTheResponse() {
+        load(featureCollection(2000, 0));
+
+        List<Earthquake> earthquakes = load(featureCollection(500, 0));
+
+        assertEquals(500, earthquakes.size());
+        assertEquals(500, registry.size());
+    }
+
+    @Test
+    public void reusesEqualEarthquakesFromATextResponse() {
+        String text = "#EventID|Time|Latitude|Longitude|Depth/km|Author|Catalog|Contributor|"
+                + "ContributorID|MagType|Magnitude|MagAuthor|EventLocationName\n"
+                + "us1|2016-10-15T14:47:56.930|-5.1|151.7|35.0|us|us|us|us1|mb|5.1|us|Kimbe\n"
+                + "us2|2016-10-15T14:30:05|61.9|-149.8|40.8|us|us|us|us2|ml|3.0|us|Houston\n";
+        registry.beginLoad();
+        List<Earthquake> first = QueryUtils.extractFeatureFromText(text, EVENT_PAGE_URL, registry);
+        registry.endLoad();
+
+        registry.beginLoad();
+        List<Earthquake> second = QueryUtils.extractFeatureFromText(
+                text.replace("|3.0|", "|3.2|"), EVENT_PAGE_URL, registry);
+        registry.endLoad();
+
+        assertSame(first.get(0), second.get(0));
+        assertNotSame(first.get(1), second.get(1));
+        assertEquals(3.2, second.get(1).getMagnitude(), 0);
+    }
+
+    /**
+     * Parses a response as one load of the registry.
+     */
+    private List<Earthquake> load(String json) {
+        registry.beginLoad();
+        List<Earthquake> earthquakes = QueryUtils.extractFeatureFromJson(json, registry);
+        registry.endLoad();
+        return earthquakes;
+    }
+
+    /**
+     * Creates a response in the USGS GeoJSON format, large enough to be parsed in parallel.
+     * @param revisedEvery is how often an event has been updated since the first revision, or 0
+     *                     if none have.
+     */
+    private static String featureCollection(int count, int revisedEvery) {
+        StringBuilder json = new StringBuilder("{\"type\":\"FeatureCollection\",\"features\":[");
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            String id = String.format(Locale.US, "us%08d", i);
+            long time = 1476000000000L - i * 60000L;
+            long updated = time + 100000L + (revisedEvery > 0 && i % revisedEvery == 0 ? 1 : 0);
+            json.append(String.format(Locale.US, "{\"type\":\"Feature\",\"properties\":{"
+                            + "\"mag\":%.1f,\"place\":\"Place %d\",\"time\":%d,\"updated\":%d,"
+                            + "\"url\":\"%s%s\"},\"geometry\":{\"type\":\"Point\","
+                            + "\"coordinates\":[%.4f,%.4f,10.0]},\"id\":\"%s\"}",
+                    (i % 90) / 10.0, i, time, updated, EVENT_PAGE_URL, id, (i % 360) - 180.0,
+                    (i % 180) - 90.0, id));
+        }
+        return json.append("]}").toString();
+    }
+
+    private static Earthquake quake(String id, long updated) {
+        return new Earthquake(id, updated, "Place " + id, 4.0, 1476000000000L,
+                EVENT_PAGE_URL + id, 10, 20);
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.android.quakereport;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks the counts and percentiles read back from a {@link LatencyHistogram}.
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void percentilesAreTheUpperBoundOfTheirBucket() {
+        LatencyHistogram histogram = new LatencyHistogram(10, 20, 30, 40, 50, 60, 70, 80, 90);
+        for (long nanos = 1; nanos <= 100; nanos++) {
+            histogram.record(nanos);
+        }
+
+        assertEquals(100, histogram.getCount());
+        assertEquals(10, histogram.getPercentileNanos(0));
+        assertEquals(10, histogram.getPercentileNanos(10));
+        assertEquals(20, histogram.getPercentileNanos(10.5));
+        assertEquals(50, histogram.getPercentileNanos(50));
+        assertEquals(90, histogram.getPercentileNanos(90));
+        // Anything in the last bucket is only known to be at most the longest duration
+        assertEquals(100, histogram.getPercentileNanos(99));
+        assertEquals(100, histogram.getPercentileNanos(100));
+    }
+
+    @Test
+    public void percentilesNeverExceedTheLongestDuration() {
+        LatencyHistogram histogram = new LatencyHistogram(10, 20);
+        histogram.record(3);
+        histogram.record(5);
+
+        assertEquals(5, histogram.getPercentileNanos(50));
+        assertEquals(5, histogram.getMaxNanos());
+        assertEquals(4, histogram.getMeanNanos());
+    }
+
+    @Test
+    public void emptyHistogramHasNoPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram(10, 20);
+
+        assertEquals(0, histogram.getPercentileNanos(50));
+        assertEquals(0, histogram.getMeanNanos());
+        assertEquals(0, histogram.getCountAbove(10));
+    }
+
+    @Test
+    public void countAboveABucketBoundIsExact() {
+        LatencyHistogram histogram = new LatencyHistogram(10, 20, 30);
+        for (long nanos : new long[] {5, 10, 15, 20, 25, 35, 1000}) {
+            histogram.record(nanos);
+        }
+
+        // A duration equal to a bound is in the bucket below it, so isn't above the bound
+        assertEquals(7, histogram.getCountAbove(Long.MIN_VALUE));
+        assertEquals(5, histogram.getCountAbove(10));
+        assertEquals(3, histogram.getCountAbove(20));
+        assertEquals(2, histogram.getCountAbove(30));
+    }
+
+    @Test
+    public void countAboveBetweenBoundsOnlyCountsWholeBuckets() {
+        LatencyHistogram histogram = new LatencyHistogram(10, 20, 30);
+        histogram.record(12);
+        histogram.record(18);
+        histogram.record(25);
+
+        // 18 is above 15, but its bucket starts below 15, so it can't be counted
+        assertEquals(1, histogram.getCountAbove(15));
+    }
+
+    @Test
+    public void resetForgetsEverything() {
+        LatencyHistogram histogram = new LatencyHistogram(10);
+        histogram.record(5);
+        histogram.record(50);
+
+        histogram.reset();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMaxNanos());
+        assertEquals(0, histogram.getCountAbove(Long.MIN_VALUE));
+        assertEquals("upper_bound_ms,count\n0.000,0\n,0\n", histogram.toCsv());
+    }
+}
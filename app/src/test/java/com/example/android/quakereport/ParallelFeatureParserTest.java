@@ -0,0 +1,378 @@
+package com.example.android.quakereport;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the scanner which finds the features in a response, and that
+ * {@link ParallelFeatureParser} puts the earthquakes back together in order.
+ */
+public class ParallelFeatureParserTest {
+
+    private final ParallelFeatureParser parser = new ParallelFeatureParser(4);
+
+    @After
+    public void tearDown() {
+        parser.shutdown();
+    }
+
+    @Test
+    public void skipStringStopsAfterTheClosingQuote() {
+        assertEquals(2, ParallelFeatureParser.skipString("\"\"", 0));
+        assertEquals(5, ParallelFeatureParser.skipString("\"abc\",", 0));
+        // Escaped quotes and backslashes don't end the string
+        assertEquals(6, ParallelFeatureParser.skipString("\"a\\\"b\"}", 0));
+        assertEquals(4, ParallelFeatureParser.skipString("\"\\\\\"\"", 0));
+        assertEquals(8, ParallelFeatureParser.skipString("\"\\u0022\"", 0));
+    }
+
+    @Test
+    public void skipStringFailsWhenTheStringIsntClosed() {
+        assertEquals(-1, ParallelFeatureParser.skipString("\"abc", 0));
+        assertEquals(-1, ParallelFeatureParser.skipString("\"abc\\\"", 0));
+        assertEquals(-1, ParallelFeatureParser.skipString("\"abc\\", 0));
+    }
+
+    @Test
+    public void skipValueSkipsEachKindOfValue() {
+        assertEquals(3, ParallelFeatureParser.skipValue("1.5,", 0));
+        assertEquals(4, ParallelFeatureParser.skipValue("null}", 0));
+        assertEquals(5, ParallelFeatureParser.skipValue("-2e10", 0));
+        assertEquals(5, ParallelFeatureParser.skipValue("\"a,b\"]", 0));
+        assertEquals(2, ParallelFeatureParser.skipValue("{}", 0));
+        assertEquals(12, ParallelFeatureParser.skipValue("{\"a\":[1,{}]},{}", 0));
+        // Brackets and quotes inside strings don't count
+        assertEquals(14, ParallelFeatureParser.skipValue("[\"]}\",\"\\\"[\",1]]", 0));
+    }
+
+    @Test
+    public void skipValueFailsWhenTheValueIsTruncated() {
+        assertEquals(-1, ParallelFeatureParser.skipValue("", 0));
+        assertEquals(-1, ParallelFeatureParser.skipValue("{\"a\":[1,2]", 0));
+        assertEquals(-1, ParallelFeatureParser.skipValue("[\"]\"", 0));
+        assertEquals(-1, ParallelFeatureParser.skipValue("{\"a\":\"}", 0));
+    }
+
+    @Test
+    public void findsEachFeature() {
+        String json = "{\"type\":\"FeatureCollection\",\"features\":[ {\"a\":1} ,\n{\"b\":\"x\"}]}";
+
+        assertEquals(list("{\"a\":1}", "{\"b\":\"x\"}"), features(json));
+    }
+
+    @Test
+    public void findsFeaturesContainingEscapedQuotesAndBackslashes() {
+        String first = "{\"place\":\"5km \\\"N\\\" of ]}, Town\\\\\",\"n\":1}";
+        String second = "{\"place\":\"\\\\\",\"url\":\"[\"}";
+        String json = "{\"features\":[" + first + "," + second + "]}";
+
+        assertEquals(list(first, second), features(json));
+    }
+
+    @Test
+    public void findsFeaturesAfterMetadata() {
+        String json = "{\"type\":\"FeatureCollection\",\"metadata\":{\"title\":\"features\","
+                + "\"features\":[{\"nested\":true}]},\"bbox\":[1,2],\"features\":[{\"top\":1}]}";
+
+        assertEquals(list("{\"top\":1}"), features(json));
+    }
+
+    @Test
+    public void ignoresFeaturesThatAreOnlyANestedKey() {
+        assertNull(ParallelFeatureParser.findFeatureBounds(
+                "{\"metadata\":{\"features\":[{\"nested\":true}]}}"));
+        assertNull(ParallelFeatureParser.findFeatureBounds(
+                "{\"metadata\":{\"count\":1},\"title\":\"\\\"features\\\":[{}]\"}"));
+    }
+
+    @Test
+    public void findsAnEmptyArray() {
+        assertArrayEquals(new int[0],
+                ParallelFeatureParser.findFeatureBounds("{\"features\":[]}"));
+        assertArrayEquals(new int[0],
+                ParallelFeatureParser.findFeatureBounds("{ \"features\" : [ \n ] }"));
+    }
+
+    @Test
+    public void rejectsAnythingButAnObjectWithAFeaturesArray() {
+        assertNull(ParallelFeatureParser.findFeatureBounds(""));
+        assertNull(ParallelFeatureParser.findFeatureBounds("[{\"features\":[]}]"));
+        assertNull(ParallelFeatureParser.findFeatureBounds("{\"features\":{}}"));
+        assertNull(ParallelFeatureParser.findFeatureBounds("{\"features\":[{} {}]}"));
+    }
+
+    @Test
+    public void rejectsEveryTruncationOfAResponse() {
+        String json = "{\"type\":\"FeatureCollection\",\"features\":[" + feature(0, "A \\\"B\\\"")
+                + "," + feature(1, "C") + "]}";
+        assertEquals(2, ParallelFeatureParser.findFeatureBounds(json).length / 2);
+
+        // Cutting off the closing brace of the root object still leaves every feature whole
+        int lastBracket = json.lastIndexOf(']');
+        for (int length = 0; length <= lastBracket; length++) {
+            assertNull("truncated to " + length,
+                    ParallelFeatureParser.findFeatureBounds(json.substring(0, length)));
+        }
+    }
+
+    @Test
+    public void peeksAtTheIdOfEachFeature() {
+        String json = featureCollection(3, -1);
+        int[] bounds = ParallelFeatureParser.findFeatureBounds(json);
+
+        assertEquals("us00000000", ParallelFeatureParser.peekId(json, bounds[0]));
+        assertEquals("us00000002", ParallelFeatureParser.peekId(json, bounds[4]));
+        assertEquals(1476000100000L - 2 * 60000L,
+                ParallelFeatureParser.peekUpdated(json, bounds[4]));
+    }
+
+    @Test
+    public void peeksOnlyAtTheFeaturesOwnId() {
+        String json = "{\"features\":[{\"properties\":{\"id\":\"nested\",\"updated\":5},"
+                + "\"id\":\"own\"},{\"properties\":{\"id\":\"nested\"}}]}";
+        int[] bounds = ParallelFeatureParser.findFeatureBounds(json);
+
+        assertEquals("own", ParallelFeatureParser.peekId(json, bounds[0]));
+        assertEquals(5, ParallelFeatureParser.peekUpdated(json, bounds[0]));
+        assertNull(ParallelFeatureParser.peekId(json, bounds[2]));
+        assertEquals(Earthquake.UNKNOWN_UPDATED,
+                ParallelFeatureParser.peekUpdated(json, bounds[2]));
+    }
+
+    @Test
+    public void leavesIdsWithEscapesToTheParser() {
+        String json = "{\"features\":[{\"place\":\"a\\\\b\",\"id\":\"plain\"},"
+                + "{\"id\":\"quo\\\"ted\"},{\"id\":\"\\u0041\"},{\"id\":7}]}";
+        int[] bounds = ParallelFeatureParser.findFeatureBounds(json);
+
+        // A backslash before the ID's value doesn't count
+        assertEquals("plain", ParallelFeatureParser.peekId(json, bounds[0]));
+        assertNull(ParallelFeatureParser.peekId(json, bounds[2]));
+        assertNull(ParallelFeatureParser.peekId(json, bounds[4]));
+        assertNull(ParallelFeatureParser.peekId(json, bounds[6]));
+    }
+
+    @Test
+    public void leavesUpdatedTimesThatArentWholeNumbersToTheParser() {
+        String json = "{\"features\":[{\"properties\":{\"updated\":1.5}},"
+                + "{\"properties\":{\"updated\":-20}},"
+                + "{\"properties\":{\"updated\":1e3}},"
+                + "{\"properties\":{\"updated\":\"12\"}},"
+                + "{\"properties\":{\"updated\":12345678901234567890}}]}";
+        int[] bounds = ParallelFeatureParser.findFeatureBounds(json);
+
+        assertEquals(Earthquake.UNKNOWN_UPDATED,
+                ParallelFeatureParser.peekUpdated(json, bounds[0]));
+        assertEquals(-20, ParallelFeatureParser.peekUpdated(json, bounds[2]));
+        assertEquals(Earthquake.UNKNOWN_UPDATED,
+                ParallelFeatureParser.peekUpdated(json, bounds[4]));
+        assertEquals(Earthquake.UNKNOWN_UPDATED,
+                ParallelFeatureParser.peekUpdated(json, bounds[6]));
+        assertEquals(Earthquake.UNKNOWN_UPDATED,
+                ParallelFeatureParser.peekUpdated(json, bounds[8]));
+    }
+
+    @Test
+    public void peekingAtAnIdDoesNotDependOnTheRestOfTheResponse() {
+        // Like most real responses, these have no backslashes at all, which is when a search
+        // for one that isn't bounded by the ID runs on to the end of the response
+        String shortResponse = plainFeatureCollection(2000);
+        String longResponse = plainFeatureCollection(20000);
+        assertEquals(-1, longResponse.indexOf('\\'));
+        int[] shortBounds = ParallelFeatureParser.findFeatureBounds(shortResponse);
+        int[] longBounds = ParallelFeatureParser.findFeatureBounds(longResponse);
+
+        // Peek at the same features at the start of each response, warming up first and then
+        // taking the fastest of several runs, to keep the comparison steady
+        for (int run = 0; run < 5; run++) {
+            timePeekingAtIds(shortResponse, shortBounds, 2000);
+            timePeekingAtIds(longResponse, longBounds, 2000);
+        }
+        long shortNanos = Long.MAX_VALUE;
+        long longNanos = Long.MAX_VALUE;
+        for (int run = 0; run < 10; run++) {
+            shortNanos = Math.min(shortNanos, timePeekingAtIds(shortResponse, shortBounds, 2000));
+            longNanos = Math.min(longNanos, timePeekingAtIds(longResponse, longBounds, 2000));
+        }
+
+        // Searching the rest of the response for every feature would take about twenty times
+        // as long in the longer response, and make parsing it with a registry quadratic
+        double ratio = (double) longNanos / shortNanos;
+        assertTrue("Peeking took " + ratio + "x as long in a 10x longer response", ratio < 5);
+    }
+
+    @Test
+    public void reusesEveryFeatureOfAResponseWithoutBackslashes() {
+        String json = plainFeatureCollection(20000);
+        EarthquakeRegistry registry = new EarthquakeRegistry();
+        List<Earthquake> first = parser.parse(json, registry);
+
+        List<Earthquake> second = parser.parse(json, registry);
+
+        assertEquals(20000, second.size());
+        for (int i = 0; i < first.size(); i++) {
+            assertSame(first.get(i), second.get(i));
+        }
+    }
+
+    @Test
+    public void parsesASmallResponseInOrder() {
+        String json = featureCollection(50, -1);
+
+        List<Earthquake> earthquakes = parser.parse(json);
+
+        assertEquals(QueryUtils.extractFeatureFromJsonSequentially(json, null), earthquakes);
+        assertEquals(50, earthquakes.size());
+        assertEquals("us00000049", earthquakes.get(49).getId());
+    }
+
+    @Test
+    public void parsesALargeResponseInParallelInOrder() {
+        String json = featureCollection(3000, -1);
+        assertTrue(json.length() > 2 * ParallelFeatureParser.PARALLEL_PARSE_THRESHOLD);
+
+        List<Earthquake> earthquakes = parser.parse(json);
+
+        assertEquals(3000, earthquakes.size());
+        assertEquals(QueryUtils.extractFeatureFromJsonSequentially(json, null), earthquakes);
+        for (int i = 0; i < earthquakes.size(); i++) {
+            assertEquals(String.format(Locale.US, "us%08d", i), earthquakes.get(i).getId());
+        }
+    }
+
+    @Test
+    public void stopsAtAMalformedFeatureInASmallResponse() {
+        String json = featureCollection(50, 17);
+
+        List<Earthquake> earthquakes = parser.parse(json);
+
+        assertEquals(17, earthquakes.size());
+        assertEquals(QueryUtils.extractFeatureFromJsonSequentially(
+                featureCollection(50, -1), null).subList(0, 17), earthquakes);
+    }
+
+    @Test
+    public void stopsAtAMalformedFeatureInTheMiddleOfAChunk() {
+        // 4 threads make 16 chunks of 187 or 188 features, so 1234 is part way through one
+        String json = featureCollection(3000, 1234);
+
+        List<Earthquake> earthquakes = parser.parse(json);
+
+        assertEquals(1234, earthquakes.size());
+        List<Earthquake> expected = QueryUtils.extractFeatureFromJsonSequentially(
+                featureCollection(3000, -1), null).subList(0, 1234);
+        assertEquals(expected, earthquakes);
+    }
+
+    @Test
+    public void reusesTheFeaturesRegisteredByAParallelParse() {
+        String json = featureCollection(3000, -1);
+        EarthquakeRegistry registry = new EarthquakeRegistry();
+        List<Earthquake> first = parser.parse(json, registry);
+
+        List<Earthquake> second = parser.parse(json, registry);
+
+        assertEquals(first.size(), second.size());
+        for (int i = 0; i < first.size(); i++) {
+            assertSame(first.get(i), second.get(i));
+        }
+    }
+
+    @Test
+    public void returnsNullForAResponseWithoutFeatures() {
+        assertNull(parser.parse("{\"type\":\"FeatureCollection\"}"));
+        assertEquals(0, parser.parse("{\"features\":[]}").size());
+    }
+
+    /**
+     * Finds the features in a response, and returns their text.
+     */
+    private static List<String> features(String json) {
+        int[] bounds = ParallelFeatureParser.findFeatureBounds(json);
+        List<String> features = new ArrayList<>();
+        for (int i = 0; i < bounds.length; i += 2) {
+            features.add(json.substring(bounds[i], bounds[i + 1]));
+        }
+        return features;
+    }
+
+    private static List<String> list(String... strings) {
+        List<String> list = new ArrayList<>();
+        for (String string : strings) {
+            list.add(string);
+        }
+        return list;
+    }
+
+    /**
+     * Creates a FeatureCollection of {@code count} features.
+     * @param malformed is the index of a feature to replace with one that has balanced brackets
+     *                  but isn't valid JSON, or -1 for none.
+     */
+    private static String featureCollection(int count, int malformed) {
+        StringBuilder json = new StringBuilder("{\"type\":\"FeatureCollection\",\"metadata\":{"
+                + "\"generated\":1476000000000,\"count\":" + count + "},\"features\":[");
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            if (i == malformed) {
+                json.append("{\"type\":\"Feature\",\"properties\":{\"mag\":},\"id\":\"bad\"}");
+            } else {
+                json.append(feature(i, "Place " + i + ", with a \\\"quoted\\\" name"));
+            }
+        }
+        return json.append("]}").toString();
+    }
+
+    /**
+     * Times peeking at the IDs of the first features of a response, checking each one along
+     * the way.
+     */
+    private static long timePeekingAtIds(String json, int[] bounds, int count) {
+        long start = System.nanoTime();
+        for (int i = 0; i < count * 2; i += 2) {
+            String id = ParallelFeatureParser.peekId(json, bounds[i]);
+            if (id == null || id.length() != 10) {
+                throw new AssertionError("Couldn't peek at the ID of feature " + i / 2);
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Creates a response whose place names need no escaping, so it has no backslashes.
+     */
+    private static String plainFeatureCollection(int count) {
+        StringBuilder json = new StringBuilder("{\"type\":\"FeatureCollection\",\"features\":[");
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append(feature(i, "Place " + i));
+        }
+        return json.append("]}").toString();
+    }
+
+    private static String feature(int index, String escapedPlace) {
+        String id = String.format(Locale.US, "us%08d", index);
+        return String.format(Locale.US, "{\"type\":\"Feature\",\"properties\":{\"mag\":%.1f,"
+                        + "\"place\":\"%s\",\"time\":%d,\"updated\":%d,"
+                        + "\"url\":\"http://earthquake.usgs.gov/earthquakes/eventpage/%s\"},"
+                        + "\"geometry\":{\"type\":\"Point\",\"coordinates\":[%.4f,%.4f,10.0]},"
+                        + "\"id\":\"%s\"}",
+                (index % 90) / 10.0, escapedPlace, 1476000000000L - index * 60000L,
+                1476000100000L - index * 60000L, id, (index % 360) - 180.0,
+                (index % 180) - 90.0, id);
+    }
+}
@@ -0,0 +1,196 @@
+package com.example.android.quakereport;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Fetches responses from a tiny local HTTP server with {@link QueryUtils}, and checks that they
+ * arrive whole and are parsed correctly.
+ */
+public class QueryUtilsTest {
+
+    private static final String EVENT_PAGE_URL = "http://example.com/eventpage/";
+
+    /** A response in the FDSN text format, as the USGS sends it. */
+    private static final String TEXT_RESPONSE =
+            "#EventID|Time|Latitude|Longitude|Depth/km|Author|Catalog|Contributor|ContributorID|"
+                    + "MagType|Magnitude|MagAuthor|EventLocationName\n"
+                    + "us10007a2r|2016-10-15T14:47:56.930|-5.1537|151.7432|35.0|us|us|us|"
+                    + "us10007a2r|mb|5.1|us|121km ENE of Kimbe, Papua New Guinea\n"
+                    + "ak14081432|2016-10-15T14:30:05|61.9384|-149.8226|40.8|ak|ak|ak|"
+                    + "ak14081432|ml||ak|59km N of Houston, Alaska\n"
+                    + "\n"
+                    + "nc72713036|2016-10-14T23:59:59.5|38.8|-122.8|2.1|nc|nc|nc|"
+                    + "nc72713036|md|1.2|nc|5km W of Cobb, CA";
+
+    private ServerSocket serverSocket;
+    private Thread serverThread;
+    private volatile String body;
+
+    @Before
+    public void setUp() throws IOException {
+        serverSocket = new ServerSocket(0, 1, InetAddress.getByName("127.0.0.1"));
+        serverThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                serve();
+            }
+        });
+        serverThread.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        serverSocket.close();
+        serverThread.join();
+    }
+
+    @Test
+    public void fetchKeepsTheLineBreaksOfTheResponse() {
+        body = TEXT_RESPONSE;
+
+        assertEquals(TEXT_RESPONSE, QueryUtils.fetchResponse(getUrl(), 5000, 5000));
+    }
+
+    @Test
+    public void fetchedTextResponseIsParsedIntoOneEarthquakePerLine() {
+        body = TEXT_RESPONSE;
+
+        List<Earthquake> earthquakes = QueryUtils.extractFeatureFromText(
+                QueryUtils.fetchResponse(getUrl(), 5000, 5000), EVENT_PAGE_URL, null);
+
+        assertEquals(3, earthquakes.size());
+        assertEquals(new Earthquake("us10007a2r", Earthquake.UNKNOWN_UPDATED,
+                "121km ENE of Kimbe, Papua New Guinea", 5.1, 1476542876930L,
+                EVENT_PAGE_URL + "us10007a2r", -5.1537, 151.7432), earthquakes.get(0));
+        assertEquals("ak14081432", earthquakes.get(1).getId());
+        assertEquals(1476541805000L, earthquakes.get(1).getTimeInMilliseconds());
+        assertTrue(Double.isNaN(earthquakes.get(1).getMagnitude()));
+        assertEquals("59km N of Houston, Alaska", earthquakes.get(1).getLocation());
+        assertEquals(1476489599500L, earthquakes.get(2).getTimeInMilliseconds());
+        assertEquals("5km W of Cobb, CA", earthquakes.get(2).getLocation());
+    }
+
+    @Test
+    public void fetchedTextResponseWithWindowsLineBreaksIsParsed() {
+        body = TEXT_RESPONSE.replace("\n", "\r\n");
+
+        List<Earthquake> earthquakes = QueryUtils.extractFeatureFromText(
+                QueryUtils.fetchResponse(getUrl(), 5000, 5000), EVENT_PAGE_URL, null);
+
+        assertEquals(3, earthquakes.size());
+        assertEquals("5km W of Cobb, CA", earthquakes.get(2).getLocation());
+    }
+
+    @Test
+    public void fetchKeepsMultiByteCharactersSplitAcrossReads() {
+        // Long enough to need several reads, with a two byte character on every line
+        StringBuilder response = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            response.append(i).append("|\u014Csaka\n");
+        }
+        body = response.toString();
+
+        assertEquals(body, QueryUtils.fetchResponse(getUrl(), 5000, 5000));
+    }
+
+    @Test
+    public void malformedTextLinesAreSkipped() {
+        String response = "#header\nnot|enough|fields\n"
+                + "id1|yesterday|1|2|3|a|b|c|d|e|4.0|f|Somewhere\n"
+                + "id2|2016-10-15T14:30:05|1|2|3|a|b|c|d|e|4.0|f|Somewhere else\n";
+
+        List<Earthquake> earthquakes =
+                QueryUtils.extractFeatureFromText(response, EVENT_PAGE_URL, null);
+
+        assertEquals(1, earthquakes.size());
+        assertEquals("id2", earthquakes.get(0).getId());
+        assertFalse(earthquakes.get(0).getUrl().isEmpty());
+    }
+
+    @Test
+    public void failingSecondarySourceDoesNotMakeThePrimaryLinkPoor() throws IOException {
+        body = TEXT_RESPONSE;
+        // A server that is down, as nothing listens on the port any more
+        ServerSocket closed = new ServerSocket(0, 1, InetAddress.getByName("127.0.0.1"));
+        String secondaryUrl = "http://127.0.0.1:" + closed.getLocalPort()
+                + "/fdsnws/event/1/query?format=geojson";
+        closed.close();
+
+        // The sources are fetched in parallel, so the primary's fetch can land between the
+        // secondary's failures
+        QueryUtils.fetchResponse(secondaryUrl, 5000, 5000);
+        QueryUtils.fetchResponse(getUrl(), 5000, 5000);
+        QueryUtils.fetchResponse(secondaryUrl, 5000, 5000);
+        QueryUtils.fetchResponse(secondaryUrl, 5000, 5000);
+
+        LinkQualityEstimator primary = LinkQualityEstimator.getInstance(
+                "127.0.0.1:" + serverSocket.getLocalPort());
+        LinkQualityEstimator secondary = LinkQualityEstimator.getInstance(
+                "127.0.0.1:" + closed.getLocalPort());
+        assertTrue(primary.hasEstimate());
+        assertEquals(0, primary.getConsecutiveFailures());
+        assertEquals(3, secondary.getConsecutiveFailures());
+        assertEquals(AdaptiveRequestPolicy.LinkQuality.MODERATE,
+                new AdaptiveRequestPolicy(primary).assessLink(null));
+        assertEquals(AdaptiveRequestPolicy.LinkQuality.POOR,
+                new AdaptiveRequestPolicy(secondary).assessLink(null));
+    }
+
+    private String getUrl() {
+        return "http://127.0.0.1:" + serverSocket.getLocalPort()
+                + "/fdsnws/event/1/query?format=text";
+    }
+
+    /**
+     * Answers requests with {@link #body} until the server socket is closed.
+     */
+    private void serve() {
+        while (true) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                return;
+            }
+            try {
+                // Read the request up to the blank line after its headers
+                InputStream in = socket.getInputStream();
+                int matched = 0;
+                while (matched < 4) {
+                    int b = in.read();
+                    if (b == -1) {
+                        break;
+                    }
+                    matched = (b == (matched % 2 == 0 ? '\r' : '\n')) ? matched + 1
+                            : (b == '\r' ? 1 : 0);
+                }
+
+                byte[] bytes = body.getBytes(Charset.forName("UTF-8"));
+                OutputStream out = socket.getOutputStream();
+                out.write(("HTTP/1.1 200 OK\r\nContent-Type: text/plain; charset=UTF-8\r\n"
+                        + "Content-Length: " + bytes.length + "\r\nConnection: close\r\n\r\n")
+                        .getBytes(Charset.forName("US-ASCII")));
+                out.write(bytes);
+                out.flush();
+                socket.close();
+            } catch (IOException e) {
+                // The client gave up, so wait for the next one
+            }
+        }
+    }
+}
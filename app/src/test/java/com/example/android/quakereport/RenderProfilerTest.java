@@ -0,0 +1,96 @@
+package com.example.android.quakereport;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks how {@link RenderProfiler} counts janky and dropped frames.
+ */
+public class RenderProfilerTest {
+
+    private static final long PERIOD = RenderProfiler.DEFAULT_FRAME_PERIOD_NANOS;
+
+    @Test
+    public void framesWithinOnePeriodAreSmooth() {
+        RenderProfiler profiler = new RenderProfiler();
+        profiler.recordFrame(1);
+        profiler.recordFrame(PERIOD);
+
+        assertEquals(2, profiler.getFrameHistogram().getCount());
+        assertEquals(0, profiler.getJankFrameCount());
+        assertEquals(0, profiler.getDroppedFrameCount());
+    }
+
+    @Test
+    public void jitteryFramesAreSmooth() {
+        RenderProfiler profiler = new RenderProfiler();
+        // A little late, and on a display running at 58 rather than 60 frames per second
+        profiler.recordFrame(PERIOD + 2000000);
+        profiler.recordFrame(Math.round(1e9 / 58));
+        profiler.recordFrame(PERIOD * 3 / 2);
+
+        assertEquals(0, profiler.getJankFrameCount());
+        assertEquals(0, profiler.getDroppedFrameCount());
+    }
+
+    @Test
+    public void frameOfTwoPeriodsDropsOneFrame() {
+        RenderProfiler profiler = new RenderProfiler();
+        profiler.recordFrame(PERIOD * 3 / 2 + 1);
+        profiler.recordFrame(2 * PERIOD);
+        // Slightly late, which used to count as two dropped frames
+        profiler.recordFrame(2 * PERIOD + 1000000);
+
+        assertEquals(3, profiler.getJankFrameCount());
+        assertEquals(3, profiler.getDroppedFrameCount());
+    }
+
+    @Test
+    public void longFramesDropEveryPeriodTheyMissed() {
+        RenderProfiler profiler = new RenderProfiler(10);
+        profiler.recordFrame(21);
+        profiler.recordFrame(29);
+        profiler.recordFrame(95);
+        profiler.recordFrame(12);
+
+        assertEquals(3, profiler.getJankFrameCount());
+        assertEquals(1 + 2 + 9, profiler.getDroppedFrameCount());
+    }
+
+    @Test
+    public void takesThePeriodFromTheRefreshRate() {
+        assertEquals(16666667, RenderProfiler.getFramePeriodNanos(60));
+        assertEquals(11111111, RenderProfiler.getFramePeriodNanos(90));
+        assertEquals(8333333, RenderProfiler.getFramePeriodNanos(120));
+
+        // At 120 frames per second, a 60 frames per second frame is a missed vsync
+        RenderProfiler profiler = new RenderProfiler(RenderProfiler.getFramePeriodNanos(120));
+        profiler.recordFrame(PERIOD);
+        assertEquals(1, profiler.getJankFrameCount());
+        assertEquals(1, profiler.getDroppedFrameCount());
+    }
+
+    @Test
+    public void assumesSixtyFramesPerSecondForAnUnknownRefreshRate() {
+        assertEquals(PERIOD, RenderProfiler.getFramePeriodNanos(0));
+        assertEquals(PERIOD, RenderProfiler.getFramePeriodNanos(-1));
+        assertEquals(PERIOD, RenderProfiler.getFramePeriodNanos(Float.NaN));
+    }
+
+    @Test
+    public void resetClearsTheCounts() {
+        RenderProfiler profiler = new RenderProfiler();
+        profiler.recordFrame(3 * PERIOD);
+        profiler.recordInflate(1000);
+        profiler.recordBind(1000);
+
+        profiler.reset();
+
+        assertEquals(0, profiler.getJankFrameCount());
+        assertEquals(0, profiler.getDroppedFrameCount());
+        assertEquals(0, profiler.getFrameHistogram().getCount());
+        assertEquals(0, profiler.getInflateHistogram().getCount());
+        assertEquals(0, profiler.getBindHistogram().getCount());
+    }
+}